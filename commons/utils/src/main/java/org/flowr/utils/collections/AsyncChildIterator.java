@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.flowr.utils.collections.ChildIterator.IAsyncChildProvider;
+
+/**
+ * Depth first pre-order iteration like {@link ChildIterator}, which requests the children of upcoming elements ahead of
+ * the consumer. Up to <i>maxInFlight</i> children requests are kept pending, so the latency of the children provider
+ * overlaps with the processing of the already returned elements. The iteration order is the same as without
+ * prefetching.
+ *
+ * @author krausesv
+ *
+ * @param <E> iteration element type
+ */
+public class AsyncChildIterator<E> implements Iterator<E> {
+
+   private static final class Node<E> {
+
+      private final E element;
+      private Future< ? extends Iterable<E>> children;
+
+      Node(E element) {
+         this.element = element;
+      }
+   }
+
+   private final IAsyncChildProvider<E> childrenProvider;
+   private final int maxInFlight;
+   private final List<Iterator<Node<E>>> stack = new ArrayList<Iterator<Node<E>>>();
+   // not yet consumed nodes in expected consumption order, which children have not been requested yet
+   private final LinkedList<Node<E>> frontier = new LinkedList<Node<E>>();
+   private int inFlight;
+   private Node<E> next;
+   private Node<E> expand;
+   private boolean prepared = false;
+
+   @SuppressWarnings("unchecked")
+   public static <E> Iterator<E> createIterator(IAsyncChildProvider<E> childrenProvider, int maxInFlight,
+      E... elements) {
+      return new AsyncChildIterator<E>(childrenProvider, Arrays.asList(elements), maxInFlight);
+   }
+
+   /**
+    * @param childrenProvider the asynchronous children provider
+    * @param collection the root elements
+    * @param maxInFlight the maximum number of pending children requests. 0 disables prefetching.
+    */
+   public AsyncChildIterator(IAsyncChildProvider<E> childrenProvider, Iterable<E> collection, int maxInFlight) {
+      if (maxInFlight < 0) {
+         throw new IllegalArgumentException("maxInFlight must not be negative");
+      }
+      this.childrenProvider = childrenProvider;
+      this.maxInFlight = maxInFlight;
+      push(collection.iterator());
+      request();
+   }
+
+   private void push(Iterator<E> elements) {
+      if (!elements.hasNext()) {
+         return;
+      }
+      List<Node<E>> nodes = new ArrayList<Node<E>>();
+      while (elements.hasNext()) {
+         nodes.add(new Node<E>(elements.next()));
+      }
+      stack.add(nodes.iterator());
+      if (maxInFlight == 0) {
+         return;
+      }
+      // the new nodes are consumed before all nodes already known
+      for (int i = nodes.size() - 1; i >= 0; i--) {
+         frontier.addFirst(nodes.get(i));
+      }
+   }
+
+   private void request() {
+      while (inFlight < maxInFlight && !frontier.isEmpty()) {
+         Node<E> node = frontier.removeFirst();
+         node.children = childrenProvider.getChildrenAsync(node.element);
+         inFlight++;
+      }
+   }
+
+   private Iterable<E> children(Node<E> node) {
+      if (node.children == null) {
+         node.children = childrenProvider.getChildrenAsync(node.element);
+      } else {
+         inFlight--;
+      }
+      try {
+         return node.children.get();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("interrupted while waiting for children", e);
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new IllegalStateException(cause);
+      }
+      finally {
+         // don't keep the children list of consumed nodes
+         node.children = null;
+      }
+   }
+
+   void determineNext() {
+      prepared = true;
+      if (expand != null) {
+         Node<E> node = expand;
+         expand = null;
+         push(children(node).iterator());
+      }
+      request();
+      next = null;
+      while (!stack.isEmpty()) {
+         Iterator<Node<E>> top = stack.get(stack.size() - 1);
+         if (top.hasNext()) {
+            next = top.next();
+            return;
+         }
+         stack.remove(stack.size() - 1);
+      }
+   }
+
+   @Override
+   public boolean hasNext() {
+      if (!prepared) {
+         determineNext();
+      }
+      return next != null;
+   }
+
+   @Override
+   public E next() {
+      if (!hasNext()) {
+         throw new NoSuchElementException();
+      }
+      Node<E> node = next;
+      // all preceding nodes are consumed, so a node not requested yet is the first one of the frontier
+      if (!frontier.isEmpty() && frontier.getFirst() == node) {
+         frontier.removeFirst();
+      }
+      expand = node;
+      prepared = false;
+      return node.element;
+   }
+
+   @Override
+   public void remove() {
+      throw new UnsupportedOperationException("read only iterator");
+   }
+
+   /**
+    * @return the number of currently pending children requests
+    */
+   public int getInFlight() {
+      return inFlight;
+   }
+
+   /**
+    * @return the number of nodes waiting for their children request
+    */
+   int getFrontierSize() {
+      return frontier.size();
+   }
+}
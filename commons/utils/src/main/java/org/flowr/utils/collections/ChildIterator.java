@@ -7,10 +7,24 @@
  ******************************************************************************/
 package org.flowr.utils.collections;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.flowr.utils.IFilter;
+import org.flowr.utils.ITransformer;
+import org.flowr.utils.collections.Composite.CompositeIterator;
 
 /**
  * @author krausesv
@@ -18,7 +32,7 @@ import java.util.NoSuchElementException;
  * @param <E> iteration element type
  * 
  */
-public class ChildIterator<E> implements Iterator<E> {
+public class ChildIterator<E> implements CompositeIterator<E> {
 
    /**
     * defines the ability providing children for a given container.
@@ -38,45 +52,288 @@ public class ChildIterator<E> implements Iterator<E> {
       Iterable<E> getChildren(E container);
    }
 
+   /**
+    * defines the ability providing children for a given container asynchronously.
+    *
+    * @author krausesv
+    *
+    * @param <E>
+    * @see AsyncChildIterator
+    */
+   public static interface IAsyncChildProvider<E> {
+
+      /**
+       * requests the children iterable for the given container.
+       *
+       * @param container the children's parent
+       * @return the future {@link Iterable} instance for the children. may not be null.
+       */
+      Future<? extends Iterable<E>> getChildrenAsync(E container);
+   }
+
+   /**
+    * creates an asynchronous children provider running the given provider on the given executor.
+    *
+    * @param childrenProvider the synchronous provider. Called concurrently, thus has to be thread safe.
+    * @param executor the executor
+    */
+   public static <E> IAsyncChildProvider<E> asyncProvider(final IChildProvider<E> childrenProvider,
+      final Executor executor) {
+      return new IAsyncChildProvider<E>() {
+
+         @Override
+         public Future<Iterable<E>> getChildrenAsync(final E container) {
+            FutureTask<Iterable<E>> task = new FutureTask<Iterable<E>>(new Callable<Iterable<E>>() {
+
+               @Override
+               public Iterable<E> call() throws Exception {
+                  return childrenProvider.getChildren(container);
+               }
+            });
+            executor.execute(task);
+            return task;
+         }
+      };
+   }
+
+   /**
+    * defines the ability to remember already visited elements. Used to emit elements reachable via several parents
+    * only once and to terminate on cyclic graphs.
+    *
+    * @author krausesv
+    *
+    * @param <E>
+    */
+   public static interface IVisitTracker<E> {
+
+      /**
+       * marks the given element as visited.
+       *
+       * @param element the element to visit
+       * @return true, if the element has not been visited before.
+       */
+      boolean visit(E element);
+   }
+
+   /**
+    * creates a visit tracker comparing elements by identity.
+    */
+   public static <E> IVisitTracker<E> identityTracker() {
+      final Set<E> visited = Collections.newSetFromMap(new IdentityHashMap<E, Boolean>());
+      return new IVisitTracker<E>() {
+
+         @Override
+         public boolean visit(E element) {
+            return visited.add(element);
+         }
+      };
+   }
+
+   /**
+    * creates a visit tracker comparing the element keys determined by the given key extractor by equality.
+    *
+    * @param keyExtractor determines the elements key. may not be null.
+    */
+   public static <E> IVisitTracker<E> keyTracker(final ITransformer<? super E, ?> keyExtractor) {
+      if (keyExtractor == null)
+         throw new NullPointerException("keyExtractor may not be null");
+      final Set<Object> visited = new HashSet<Object>();
+      return new IVisitTracker<E>() {
+
+         @Override
+         public boolean visit(E element) {
+            return visited.add(keyExtractor.transform(element));
+         }
+      };
+   }
+
+   /**
+    * creates a compact visit tracker for elements having dense, non negative integer ids.
+    *
+    * @param idExtractor determines the elements id. may not be null.
+    */
+   public static <E> IVisitTracker<E> bitSetTracker(final ITransformer<? super E, Integer> idExtractor) {
+      if (idExtractor == null)
+         throw new NullPointerException("idExtractor may not be null");
+      final BitSet visited = new BitSet();
+      return new IVisitTracker<E>() {
+
+         @Override
+         public boolean visit(E element) {
+            int id = idExtractor.transform(element).intValue();
+            if (visited.get(id)) {
+               return false;
+            }
+            visited.set(id);
+            return true;
+         }
+      };
+   }
+
+   /**
+    * the iteration order
+    */
+   public static enum Order {
+
+      /**
+       * pre-order: an element is followed by its children before its next sibling
+       */
+      DepthFirst,
+
+      /**
+       * level order: all elements of a level are followed by the elements of the next level
+       */
+      BreadthFirst
+   }
+
+   private static final class Level<E> {
+
+      private final Iterator<E> iterator;
+      private final E parent;
+      private final int depth;
+
+      Level(Iterator<E> iterator, E parent, int depth) {
+         this.iterator = iterator;
+         this.parent = parent;
+         this.depth = depth;
+      }
+   }
+
+   /**
+    * marks the absence of a next or current element, since null is a valid element.
+    */
+   private static final Object NONE = new Object();
+
    private IChildProvider<E> childrenProvider;
-   private ChildIterator<E> childIterator;
-   private Iterator<E> thisIterator;
-   private E next;
+   private IVisitTracker<E> visitTracker;
+   private Order order = Order.DepthFirst;
+   private int maxDepth = -1;
+   private IFilter< ? super E> pruneFilter;
+   // stack of levels for depth first, queue of levels for breadth first order
+   private final ArrayDeque<Level<E>> levels = new ArrayDeque<Level<E>>();
+   private Object next = NONE;
+   private Level<E> nextLevel;
+   private Object current = NONE;
+   private Level<E> currentLevel;
+   private boolean expand = false;
    private boolean prepared = false;
    
+   @SuppressWarnings("unchecked")
    public static <E> Iterator<E> createIterator(IChildProvider<E> childrenProvider, E... elements) {
 	   ArrayList<E> list = new ArrayList<E>();
 	   list.addAll(Arrays.asList(elements));
 	   return new ChildIterator<E>(childrenProvider, list);
    }
 
+   /**
+    * creates an iterator emitting each element only once, even if it is reachable via several parents.
+    *
+    * @see #identityTracker()
+    */
+   @SuppressWarnings("unchecked")
+   public static <E> Iterator<E> createIterator(IChildProvider<E> childrenProvider, IVisitTracker<E> visitTracker,
+      E... elements) {
+      return new ChildIterator<E>(childrenProvider, Arrays.asList(elements), visitTracker);
+   }
+
    /**
     * @param childrenProvider
     */
    public ChildIterator(IChildProvider<E> childrenProvider, Iterable<E> collection) {
+      this(childrenProvider, collection, null);
+   }
+
+   /**
+    * @param childrenProvider
+    * @param collection the root elements
+    * @param visitTracker remembers visited elements. Already visited elements and their children are skipped. might be
+    *           null, which means elements reachable via several parents are emitted each time.
+    */
+   public ChildIterator(IChildProvider<E> childrenProvider, Iterable<E> collection, IVisitTracker<E> visitTracker) {
       this.childrenProvider = childrenProvider;
-      this.thisIterator = collection.iterator();
+      this.visitTracker = visitTracker;
+      this.levels.add(new Level<E>(collection.iterator(), null, 0));
+   }
+
+   /**
+    * sets the iteration order. Has to be called before the iteration starts.
+    *
+    * @param order the order. may not be null. Default is {@link Order#DepthFirst}.
+    * @return this iterator
+    */
+   public ChildIterator<E> setOrder(Order order) {
+      if (order == null)
+         throw new NullPointerException("order may not be null");
+      this.order = order;
+      return this;
    }
 
+   /**
+    * limits the iteration depth. The children of elements at the maximum depth are not requested.
+    *
+    * @param maxDepth the maximum depth. The root elements have depth 0. A negative value means unlimited, which is the
+    *           default.
+    * @return this iterator
+    */
+   public ChildIterator<E> setMaxDepth(int maxDepth) {
+      this.maxDepth = maxDepth;
+      return this;
+   }
+
+   /**
+    * sets a filter pruning subtrees. Elements accepted by the filter are iterated, but their children are not
+    * requested.
+    *
+    * @param pruneFilter the filter. might be null, which means no pruning.
+    * @return this iterator
+    */
+   public ChildIterator<E> setPruneFilter(IFilter< ? super E> pruneFilter) {
+      this.pruneFilter = pruneFilter;
+      return this;
+   }
+
+   /**
+    * @deprecated not called anymore, the iteration keeps a stack of the children's iterators instead of nested child
+    *             iterators.
+    */
+   @Deprecated
    protected ChildIterator<E> newChildIterator(IChildProvider<E> childrenProvider, Iterable<E> iterable) {
       return new ChildIterator<E>(childrenProvider, iterable);
    }
 
    void determineNext() {
       prepared = true;
-      if (childIterator == null) {
-         if (thisIterator.hasNext()) {
-            next = thisIterator.next();
-            childIterator = newChildIterator(childrenProvider, childrenProvider.getChildren(next));
-         } else {
-            next = null;
+      if (expand) {
+         expand = false;
+         @SuppressWarnings("unchecked")
+         E container = (E) current;
+         int depth = currentLevel.depth;
+         // the children of the last returned element are requested not before the next element is needed
+         if ((maxDepth < 0 || depth < maxDepth) && (pruneFilter == null || !pruneFilter.accept(container))) {
+            Iterator<E> children = childrenProvider.getChildren(container).iterator();
+            if (children.hasNext()) {
+               levels.addLast(new Level<E>(children, container, depth + 1));
+            }
          }
-      } else {
-         if (childIterator.hasNext()) {
-            next = childIterator.next();
+      }
+      next = NONE;
+      nextLevel = null;
+      boolean depthFirst = order == Order.DepthFirst;
+      while (!levels.isEmpty()) {
+         Level<E> level = depthFirst ? levels.getLast() : levels.getFirst();
+         if (level.iterator.hasNext()) {
+            E candidate = level.iterator.next();
+            if (visitTracker == null || visitTracker.visit(candidate)) {
+               next = candidate;
+               nextLevel = level;
+               return;
+            }
+            continue;
+         }
+         if (depthFirst) {
+            levels.removeLast();
          } else {
-            childIterator = null;
-            determineNext();
+            levels.removeFirst();
          }
       }
    }
@@ -86,8 +343,12 @@ public class ChildIterator<E> implements Iterator<E> {
       if (!hasNext()) {
          throw new NoSuchElementException();
       }
-      E element = next;
-      determineNext();
+      @SuppressWarnings("unchecked")
+      E element = (E) next;
+      current = element;
+      currentLevel = nextLevel;
+      expand = true;
+      prepared = false;
       return element;
    }
 
@@ -96,7 +357,26 @@ public class ChildIterator<E> implements Iterator<E> {
       if (!prepared) {
          determineNext();
       }
-      return next != null;
+      return next != NONE;
+   }
+
+   /**
+    * gets the depth of the element returned by the last {@link #next()} call. The root elements have depth 0.
+    *
+    * @return the depth or -1, if {@link #next()} has not been called yet.
+    */
+   @Override
+   public int level() {
+      return currentLevel != null ? currentLevel.depth : -1;
+   }
+
+   /**
+    * gets the parent of the element returned by the last {@link #next()} call.
+    *
+    * @return the parent or null, if the element is a root element or {@link #next()} has not been called yet.
+    */
+   public E parent() {
+      return currentLevel != null ? currentLevel.parent : null;
    }
 
    @Override
@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.flowr.utils.IFilter;
+import org.flowr.utils.ITransformer;
+import org.flowr.utils.collections.CollectionUtils.GroupAggregator;
+import org.flowr.utils.collections.CollectionUtils.GroupCriteria;
+
+/**
+ * Fuses filter, transform and grouping stages into one pass over the source. Unlike chaining
+ * {@link CollectionUtils#filter(List, IFilter)}, {@link CollectionUtils#transform(List, ITransformer, boolean)} and
+ * {@link CollectionUtils#groupByKey(Iterable, GroupCriteria)} no intermediate collection is built per stage. Pipelines
+ * are immutable, every stage returns a new pipeline sharing the source. Usage
+ *
+ * <pre>
+ * Map&lt;String, List&lt;Customer&gt;&gt; byCity = CollectionPipeline.from(orders).filter(open).transform(toCustomer)
+ *    .parallel(executor, 10000).groupByKey(byCityCriteria, byName, null);
+ * </pre>
+ *
+ * @author krausesv
+ *
+ * @param <S> source element type
+ * @param <T> element type after all stages
+ */
+public final class CollectionPipeline<S, T> {
+
+   private static final Object SKIP = new Object();
+
+   /**
+    * one or more fused stages, which returns the stage result of a source element or {@link CollectionPipeline#SKIP}.
+    */
+   private static abstract class Stage<S> {
+
+      abstract Object apply(S element);
+   }
+
+   private static final Stage<Object> IDENTITY = new Stage<Object>() {
+
+      @Override
+      Object apply(Object element) {
+         return element;
+      }
+   };
+
+   private final Iterable<S> source;
+   private final Stage<S> stage;
+   private final ExecutorService executor;
+   private final int threshold;
+
+   private CollectionPipeline(Iterable<S> source, Stage<S> stage, ExecutorService executor, int threshold) {
+      this.source = source;
+      this.stage = stage;
+      this.executor = executor;
+      this.threshold = threshold;
+   }
+
+   /**
+    * creates a pipeline without any stage.
+    *
+    * @param source the source elements
+    * @return the pipeline
+    */
+   @SuppressWarnings("unchecked")
+   public static <S> CollectionPipeline<S, S> from(Iterable<S> source) {
+      if (source == null)
+         throw new NullPointerException("source may not be null");
+      return new CollectionPipeline<S, S>(source, (Stage<S>) IDENTITY, null, 0);
+   }
+
+   /**
+    * adds a filter stage.
+    *
+    * @param filter decision maker. In parallel mode called concurrently, thus has to be thread safe.
+    * @return the new pipeline
+    */
+   public CollectionPipeline<S, T> filter(final IFilter< ? super T> filter) {
+      if (filter == null)
+         throw new NullPointerException("filter may not be null");
+      final Stage<S> previous = stage;
+      return new CollectionPipeline<S, T>(source, new Stage<S>() {
+
+         @SuppressWarnings("unchecked")
+         @Override
+         Object apply(S element) {
+            Object value = previous.apply(element);
+            return value == SKIP || !filter.accept((T) value) ? SKIP : value;
+         }
+      }, executor, threshold);
+   }
+
+   /**
+    * adds a transform stage.
+    *
+    * @param transformer the transformer. In parallel mode called concurrently, thus has to be thread safe.
+    * @param skipNull drop elements transformed to null
+    * @return the new pipeline
+    */
+   public <To> CollectionPipeline<S, To> transform(final ITransformer< ? super T, To> transformer,
+      final boolean skipNull) {
+      if (transformer == null)
+         throw new NullPointerException("transformer may not be null");
+      final Stage<S> previous = stage;
+      return new CollectionPipeline<S, To>(source, new Stage<S>() {
+
+         @SuppressWarnings("unchecked")
+         @Override
+         Object apply(S element) {
+            Object value = previous.apply(element);
+            if (value == SKIP) {
+               return SKIP;
+            }
+            To result = transformer.transform((T) value);
+            return result == null && skipNull ? SKIP : result;
+         }
+      }, executor, threshold);
+   }
+
+   /**
+    * switches to parallel execution of the terminal operations. The source has to be a random access list, other
+    * sources are processed sequentially. The list is split into chunks processed concurrently by the given executor.
+    * Passing a <code>java.util.concurrent.ForkJoinPool</code> as executor is recommended.
+    *
+    * @param executor the executor processing the chunks. might be null, which means sequential processing.
+    * @param threshold lists having less elements are processed sequentially
+    * @return the new pipeline
+    */
+   public CollectionPipeline<S, T> parallel(ExecutorService executor, int threshold) {
+      return new CollectionPipeline<S, T>(source, stage, executor, threshold);
+   }
+
+   /**
+    * @return a new pipeline processing sequentially
+    */
+   public CollectionPipeline<S, T> sequential() {
+      return new CollectionPipeline<S, T>(source, stage, null, 0);
+   }
+
+   /**
+    * runs the pipeline collecting the resulting elements in source order.
+    *
+    * @return a list of the resulting elements
+    * @throws InterruptedException if the calling thread is interrupted while waiting for the chunks.
+    */
+   public List<T> toList() throws InterruptedException {
+      List<List<S>> chunks = chunks();
+      if (chunks == null) {
+         return collect(source);
+      }
+      List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>();
+      for (final List<S> chunk : chunks) {
+         tasks.add(new Callable<List<T>>() {
+
+            @Override
+            public List<T> call() throws Exception {
+               return collect(chunk);
+            }
+         });
+      }
+      return CollectionUtils.concat(executor.invokeAll(tasks));
+   }
+
+   /**
+    * runs the pipeline grouping the resulting elements like
+    * {@link CollectionUtils#groupByKey(Iterable, GroupCriteria, Comparator, Comparator)}.
+    *
+    * @param criteria determines the groups of every element. In parallel mode called concurrently, thus has to be
+    *           thread safe.
+    * @param valueComparator sorts the elements of every group, may be null
+    * @param keyComparator sorts the groups, may be null
+    * @return the elements per group
+    * @throws InterruptedException if the calling thread is interrupted while waiting for the chunks.
+    */
+   public <K> Map<K, List<T>> groupByKey(final GroupCriteria<K, ? super T> criteria,
+      Comparator< ? super T> valueComparator, Comparator<K> keyComparator) throws InterruptedException {
+      List<List<S>> chunks = chunks();
+      if (chunks == null) {
+         Map<K, List<T>> map = CollectionUtils.createMap(staged(source), criteria, keyComparator);
+         if (valueComparator != null) {
+            for (List<T> group : map.values()) {
+               Collections.sort(group, valueComparator);
+            }
+         }
+         return map;
+      }
+      List<Callable<Map<K, List<T>>>> tasks = new ArrayList<Callable<Map<K, List<T>>>>();
+      for (final List<S> chunk : chunks) {
+         tasks.add(new Callable<Map<K, List<T>>>() {
+
+            @Override
+            public Map<K, List<T>> call() throws Exception {
+               return CollectionUtils.createMap(staged(chunk), criteria, null);
+            }
+         });
+      }
+      return CollectionUtils.mergeGroups(executor.invokeAll(tasks), valueComparator, keyComparator, executor);
+   }
+
+   /**
+    * runs the pipeline folding the resulting elements per group like
+    * {@link CollectionUtils#groupByKey(Iterable, GroupCriteria, GroupAggregator, Comparator)}. Aggregators cannot merge
+    * partial results, therefore this operation always runs sequentially in source order.
+    *
+    * @param criteria determines the groups of every element
+    * @param aggregator folds the elements of a group
+    * @param keyComparator sorts the groups, may be null
+    * @return the accumulator per group
+    */
+   public <K, A> Map<K, A> groupByKey(GroupCriteria<K, ? super T> criteria, GroupAggregator< ? super T, A> aggregator,
+      Comparator<K> keyComparator) {
+      return CollectionUtils.groupByKey(staged(source), criteria, aggregator, keyComparator);
+   }
+
+   private List<List<S>> chunks() {
+      if (executor == null || !(source instanceof List) || !(source instanceof RandomAccess)) {
+         return null;
+      }
+      List<S> list = (List<S>) source;
+      if (list.size() < threshold || list.size() < 2) {
+         return null;
+      }
+      return CollectionUtils.chunks(list);
+   }
+
+   @SuppressWarnings("unchecked")
+   private List<T> collect(Iterable<S> elements) {
+      List<T> resultList = new ArrayList<T>();
+      for (S element : elements) {
+         Object value = stage.apply(element);
+         if (value != SKIP) {
+            resultList.add((T) value);
+         }
+      }
+      return resultList;
+   }
+
+   /**
+    * @return a lazy view of the stage results of the given source elements
+    */
+   private Iterable<T> staged(final Iterable<S> elements) {
+      return new Iterable<T>() {
+
+         @Override
+         public Iterator<T> iterator() {
+            final Iterator<S> it = elements.iterator();
+            return new Iterator<T>() {
+
+               private Object next = SKIP;
+
+               @Override
+               public boolean hasNext() {
+                  while (next == SKIP && it.hasNext()) {
+                     next = stage.apply(it.next());
+                  }
+                  return next != SKIP;
+               }
+
+               @Override
+               @SuppressWarnings("unchecked")
+               public T next() {
+                  if (!hasNext()) {
+                     throw new NoSuchElementException();
+                  }
+                  T t = (T) next;
+                  next = SKIP;
+                  return t;
+               }
+
+               @Override
+               public void remove() {
+                  throw new UnsupportedOperationException("read only iterator");
+               }
+            };
+         }
+      };
+   }
+}
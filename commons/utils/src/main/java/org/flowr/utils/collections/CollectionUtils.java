@@ -7,22 +7,37 @@
 
 package org.flowr.utils.collections;
 
+import java.util.AbstractList;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.flowr.utils.IFilter;
 import org.flowr.utils.ITransformer;
-import org.flowr.utils.StringUtils;
 
 /**
  * Helper class for convenient collection operations.
@@ -34,16 +49,32 @@ public final class CollectionUtils {
     private CollectionUtils() {
     }
 
+    /**
+     * creates a comparator ordering objects by their identity hash code. Please note that distinct objects may have the
+     * same identity hash code, therefore the comparator is not suitable for sorted sets of distinct objects.
+     */
     public static <T> Comparator<T> identityComparator() {
         return new Comparator<T>() {
 
             @Override
             public int compare(T o1, T o2) {
-                return System.identityHashCode(o1) - System.identityHashCode(o2);
+                int h1 = System.identityHashCode(o1);
+                int h2 = System.identityHashCode(o2);
+                return h1 < h2 ? -1 : h1 == h2 ? 0 : 1;
             }
         };
     }
 
+    /**
+     * creates a set comparing its elements by identity with constant time insertion.
+     * 
+     * @param expectedSize
+     *            the expected number of elements
+     */
+    public static <T> Set<T> newIdentitySet(int expectedSize) {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>(expectedSize));
+    }
+
     /**
      * Returns a set containing these objects from the given source set, which are accepted by the given filter.
      * 
@@ -53,13 +84,13 @@ public final class CollectionUtils {
      *            source set to filter
      * @param filter
      *            decision maker
-     * @return a subset of the accepted elements from the source set.
+     * @return a subset of the accepted elements from the source set. The subset compares its elements by identity.
      */
     public static <T> Set<T> filter(Set<T> set, IFilter<? super T> filter) {
         if (filter == null) {
             return set;
         }
-        Set<T> resultSet = new TreeSet<T>(identityComparator());
+        Set<T> resultSet = newIdentitySet(set.size());
         for (T t : set) {
             if (filter.accept(t)) {
                 resultSet.add(t);
@@ -170,10 +201,11 @@ public final class CollectionUtils {
      *            the source set to modify
      * @param filter
      *            decison maker
-     * @return a set containing all removed elements, those has been removed from the source set.
+     * @return a set containing all removed elements, those has been removed from the source set. The set compares its
+     *         elements by identity.
      */
     public static <T> Set<T> remove(Set<T> set, IFilter<? super T> filter) {
-        Set<T> resultSet = new TreeSet<T>(identityComparator());
+        Set<T> resultSet = newIdentitySet(filter != null ? set.size() : 0);
         if (filter != null) {
             for (Iterator<T> iterator = set.iterator(); iterator.hasNext();) {
                 T t = (T) iterator.next();
@@ -202,7 +234,7 @@ public final class CollectionUtils {
      * @return a set of elements containing element having the target type
      */
     public static <To, From> Set<To> transform(Set<From> source, ITransformer<From, To> transformer, boolean skipNull) {
-        Set<To> resultSet = new TreeSet<To>(identityComparator());
+        Set<To> resultSet = newIdentitySet(source.size());
         for (From from : source) {
             final To to = transformer.transform(from);
             if (to != null || !skipNull) {
@@ -239,154 +271,1463 @@ public final class CollectionUtils {
     }
 
     /**
-     * merges all elements from the given array of sets,which are matching the given filter.
+     * Returns a list containing all these objects from the given source list, which are accepted by the given filter.
+     * The list is split into chunks filtered concurrently by the given executor, the result keeps the source order.
+     * Passing a <code>java.util.concurrent.ForkJoinPool</code> as executor is recommended.
      * 
      * @param <T>
-     *            the elements type
+     *            lists elements type
+     * @param list
+     *            source list to filter
      * @param filter
-     *            the decision maker
-     * @param sets
-     *            array of sets containing elements of type T to be merged
-     * @return set with elements of type T containing all those elements form the source sets, which are accepted by the
-     *         filter.
+     *            decision maker. Called concurrently, thus has to be thread safe.
+     * @param executor
+     *            the executor filtering the chunks. might be null, which means filtering sequentially.
+     * @param threshold
+     *            lists having less elements are filtered sequentially
+     * @return a list of the accepted elements
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting for the chunks.
      */
-    public static <T> Set<T> merge(IFilter<? super T> filter, Set<T>... sets) {
-        if (sets.length == 1 && sets[0] != null) {
-            return filter(sets[0], filter);
+    public static <T> List<T> parallelFilter(List<T> list, final IFilter<? super T> filter, ExecutorService executor,
+            int threshold) throws InterruptedException {
+        if (filter == null || executor == null || list.size() < threshold || list.size() < 2) {
+            return filter(list, filter);
         }
-        Set<T> resultSet = new TreeSet<T>(identityComparator());
-        for (Set<T> set : sets) {
-            if (set != null) {
-                resultSet.addAll(filter(set, filter));
-            }
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>();
+        for (final List<T> chunk : chunks(list)) {
+            tasks.add(new Callable<List<T>>() {
+
+                @Override
+                public List<T> call() throws Exception {
+                    return filter(chunk, filter);
+                }
+            });
         }
-        return resultSet;
+        return concat(executor.invokeAll(tasks));
     }
 
     /**
-     * gets all map entries from the given map, where the tail part of the key is matching the given lead condition.
+     * transforms an source typed list of objects into another list of the target type using the given transformer. The
+     * list is split into chunks transformed concurrently by the given executor, the result keeps the source order.
+     * Passing a <code>java.util.concurrent.ForkJoinPool</code> as executor is recommended.
      * 
-     * @param <V>
-     * @param map
-     * @param leadCondition
-     * @param separator
-     * @return
+     * @param <To>
+     *            transformation target type
+     * @param <From>
+     *            transformation source type
+     * @param source
+     *            the source list
+     * @param transformer
+     *            the {@link ITransformer} to use. Called concurrently, thus has to be thread safe.
+     * @param skipNull
+     *            don't process null values into result list
+     * @param executor
+     *            the executor transforming the chunks. might be null, which means transforming sequentially.
+     * @param threshold
+     *            lists having less elements are transformed sequentially
+     * @return a list of elements having the target type
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting for the chunks.
      */
-    public static <V> List<Map.Entry<String, V>> getAll(Map<String, V> map, String leadCondition, String separator) {
-        List<Entry<String, V>> resultList = new ArrayList<Entry<String, V>>();
-        final Set<Entry<String, V>> entrySet = map.entrySet();
-        for (Entry<String, V> entry : entrySet) {
-            final String key = entry.getKey();
-            if (key.startsWith(leadCondition)) {
-                if (key.length() == leadCondition.length()) {
-                    resultList.add(entry);
-                } else if (StringUtils.subString(key, leadCondition).startsWith(separator)) {
-                    resultList.add(entry);
+    public static <To, From> List<To> parallelTransform(List<From> source, final ITransformer<From, To> transformer,
+            final boolean skipNull, ExecutorService executor, int threshold) throws InterruptedException {
+        if (executor == null || source.size() < threshold || source.size() < 2) {
+            return transform(source, transformer, skipNull);
+        }
+        List<Callable<List<To>>> tasks = new ArrayList<Callable<List<To>>>();
+        for (final List<From> chunk : chunks(source)) {
+            tasks.add(new Callable<List<To>>() {
+
+                @Override
+                public List<To> call() throws Exception {
+                    return transform(chunk, transformer, skipNull);
                 }
-            }
+            });
+        }
+        return concat(executor.invokeAll(tasks));
+    }
+
+    static <T> List<List<T>> chunks(List<T> list) {
+        int size = list.size();
+        int count = Math.min(size, Runtime.getRuntime().availableProcessors() * 4);
+        int chunkSize = (size + count - 1) / count;
+        List<List<T>> chunks = new ArrayList<List<T>>(count);
+        for (int from = 0; from < size; from += chunkSize) {
+            chunks.add(list.subList(from, Math.min(size, from + chunkSize)));
+        }
+        return chunks;
+    }
+
+    static <T> List<T> concat(List<Future<List<T>>> futures) throws InterruptedException {
+        List<List<T>> parts = new ArrayList<List<T>>(futures.size());
+        int size = 0;
+        for (Future<List<T>> future : futures) {
+            List<T> part = result(future);
+            parts.add(part);
+            size += part.size();
+        }
+        List<T> resultList = new ArrayList<T>(size);
+        for (List<T> part : parts) {
+            resultList.addAll(part);
         }
         return resultList;
     }
 
-    @SuppressWarnings("rawtypes")
-	public static <E extends Enum> List<E> sort(List<E> source) {
-        Collections.sort(source, new Comparator<E>() {
+    static <T> T result(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Returns a live view of these elements from the given source, which are accepted by the given filter. The filter is
+     * evaluated lazily while iterating, thus the view reflects later changes of the source and iterating it allocates
+     * no intermediate collection.
+     * 
+     * @param <T>
+     *            elements type
+     * @param source
+     *            the source to filter
+     * @param filter
+     *            decision maker. might be null, which means accept all.
+     * @return a read only view of the accepted elements
+     */
+    public static <T> Iterable<T> filteredView(final Iterable<T> source, final IFilter<? super T> filter) {
+        if (filter == null) {
+            return source;
+        }
+        return new Iterable<T>() {
 
             @Override
-            public int compare(E o1, E o2) {
-                return o1.ordinal() - o2.ordinal();
+            public Iterator<T> iterator() {
+                return new FilterIterator<T>(source.iterator(), filter);
             }
-        });
-        return source;
+        };
     }
 
-    public static interface GroupCriteria<K, V> {
-        K[] getGroups(V value);
-    }
-    
-    public static interface GroupedComparator<K, V> {
-        int compare(K key, V v1, V v2);
+    /**
+     * Returns a live view of the given source transformed by the given transformer. The transformer is applied lazily
+     * while iterating, thus the view reflects later changes of the source and iterating it allocates no intermediate
+     * collection.
+     * 
+     * @param <To>
+     *            transformation target type
+     * @param <From>
+     *            transformation source type
+     * @param source
+     *            the source to transform
+     * @param transformer
+     *            the {@link ITransformer} to use
+     * @param skipNull
+     *            skip elements transformed to null
+     * @return a read only view of the transformed elements
+     */
+    public static <To, From> Iterable<To> transformedView(final Iterable<From> source,
+            final ITransformer<? super From, ? extends To> transformer, final boolean skipNull) {
+        return new Iterable<To>() {
+
+            @Override
+            public Iterator<To> iterator() {
+                final Iterator<From> it = source.iterator();
+                Iterator<To> transformed = new Iterator<To>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public To next() {
+                        return transformer.transform(it.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("read only view");
+                    }
+                };
+                if (!skipNull) {
+                    return transformed;
+                }
+                return new FilterIterator<To>(transformed, new IFilter<To>() {
+
+                    @Override
+                    public boolean accept(To object) {
+                        return object != null;
+                    }
+                });
+            }
+        };
     }
 
-    public static <K, V> Map<K, List<V>> groupByKey(Iterable<V> iterable, GroupCriteria<K, V> criteria) {
-        return groupByKey(iterable, criteria, (Comparator<V>)null, null);
+    /**
+     * Returns a live, random access view of the given source list transformed by the given transformer. Each access
+     * applies the transformer to the corresponding source element.
+     * 
+     * @param <To>
+     *            transformation target type
+     * @param <From>
+     *            transformation source type
+     * @param source
+     *            the source list
+     * @param transformer
+     *            the {@link ITransformer} to use
+     * @return a read only list view of the transformed elements
+     */
+    public static <To, From> List<To> transformedView(final List<From> source,
+            final ITransformer<? super From, ? extends To> transformer) {
+        return new AbstractList<To>() {
+
+            @Override
+            public To get(int index) {
+                return transformer.transform(source.get(index));
+            }
+
+            @Override
+            public int size() {
+                return source.size();
+            }
+        };
     }
 
-    public static <K, V> Map<K, List<V>> groupByKey(Iterable<V> iterable, GroupCriteria<K, V> criteria,
-            Comparator<V> valueComparator, Comparator<K> keyComparator) {
-        Map<K, List<V>> map = createMap(iterable, criteria, keyComparator);
-        if (valueComparator != null) {
-            for (List<V> list : map.values()) {
-                Collections.sort(list, valueComparator);
+    private static final class FilterIterator<T> implements Iterator<T> {
+
+        private static final Object NONE = new Object();
+
+        private final Iterator<T> source;
+
+        private final IFilter<? super T> filter;
+
+        private Object next = NONE;
+
+        FilterIterator(Iterator<T> source, IFilter<? super T> filter) {
+            this.source = source;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == NONE && source.hasNext()) {
+                T t = source.next();
+                if (filter.accept(t)) {
+                    next = t;
+                }
             }
+            return next != NONE;
         }
-        return map;
-    }
 
-    public static <K, V> Map<K, List<V>> groupByKey(Iterable<V> iterable, GroupCriteria<K, V> criteria,
-            final GroupedComparator<K, V> valueComparator, Comparator<K> keyComparator) {
-        Map<K, List<V>> map = createMap(iterable, criteria, keyComparator);
-        if (valueComparator != null) {
-            for (Map.Entry<K, List<V>> e : map.entrySet()) {
-                final K key = e.getKey();
-                List<V> list = e.getValue();
-                Comparator<V> comparator = new Comparator<V>() {
-                    
-                    @Override
-                    public int compare(V v1, V v2) {
-                        return valueComparator.compare(key, v1, v2);
-                    }
-                };
-                Collections.sort(list, comparator);
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            @SuppressWarnings("unchecked")
+            T t = (T) next;
+            next = NONE;
+            return t;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("read only view");
         }
-        return map;
     }
 
-    private static <V, K> Map<K, List<V>> createMap(Iterable<V> c, GroupCriteria<K, V> criteria,
-            Comparator<K> keyComparator) {
-        Map<K, List<V>> map = keyComparator != null ? new TreeMap<K, List<V>>(keyComparator) : new HashMap<K, List<V>>();
-        for (V v : c) {
-            K[] groups = criteria.getGroups(v);
-            if(groups != null) {
-                for (K key : groups) {
-                    List<V> list = map.get(key);
-                    if (list == null) {
-                        list = new ArrayList<V>();
-                        map.put(key, list);
-                    }
-                    list.add(v);
+    /**
+     * splits the given list into consecutive chunks of the given size, the last chunk may be smaller. For
+     * {@link RandomAccess} lists the chunks are {@link List#subList(int, int) sub list} views created on access, so no
+     * element is copied. Structural changes of the source make the chunks undefined. Other lists, e.g. linked lists,
+     * are copied into chunks in one pass, since every sub list access would traverse the list.
+     * 
+     * @param <T>
+     *            elements type
+     * @param list
+     *            the source list
+     * @param size
+     *            the chunk size
+     * @return a read only list of the chunks
+     */
+    public static <T> List<List<T>> partition(final List<T> list, final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        if (!(list instanceof RandomAccess)) {
+            List<List<T>> chunks = new ArrayList<List<T>>();
+            List<T> chunk = null;
+            for (T t : list) {
+                if (chunk == null || chunk.size() == size) {
+                    chunk = new ArrayList<T>(size);
+                    chunks.add(chunk);
                 }
+                chunk.add(t);
             }
+            return Collections.unmodifiableList(chunks);
         }
-        return map;
+        return new AbstractList<List<T>>() {
+
+            @Override
+            public List<T> get(int index) {
+                int from = index * size;
+                if (index < 0 || from >= list.size()) {
+                    throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+                }
+                return list.subList(from, Math.min(list.size(), from + size));
+            }
+
+            @Override
+            public int size() {
+                return (list.size() + size - 1) / size;
+            }
+        };
     }
-    
-    
-    public static interface IContainerHandler<T> {
-        boolean isContainer(T t);
-        List<T> getChildren(T t);
-        T createFilteredContainer(T t, List<T> list);
+
+    /**
+     * iterates the given source in batches of the given size, the last batch may be smaller. {@link RandomAccess} lists
+     * are batched by {@link #partition(List, int)} without copying. Other sources, including linked lists, are streamed
+     * by copying the elements of one batch at a time into a buffer.
+     * 
+     * @param <T>
+     *            elements type
+     * @param source
+     *            the source elements
+     * @param size
+     *            the batch size
+     * @param reuseBuffer
+     *            refill one buffer for all batches of non random access sources, so a batch is only valid until the next
+     *            one is requested.
+     * @return the batches
+     */
+    public static <T> Iterable<List<T>> batches(final Iterable<T> source, final int size, final boolean reuseBuffer) {
+        if (source instanceof List && source instanceof RandomAccess) {
+            return partition((List<T>) source, size);
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        return new Iterable<List<T>>() {
+
+            @Override
+            public Iterator<List<T>> iterator() {
+                return new BatchIterator<T>(source.iterator(), size, reuseBuffer);
+            }
+        };
     }
-    
-    public static <T> List<T> filter(List<T> source, IFilter<? super T> filter, IContainerHandler<T> handler) {
-        if(filter == null) return source;
-        if(handler == null) return filter(source, filter);
-        List<T> resultList = new ArrayList<T>();
-        for(T t: source) {
-            if(handler.isContainer(t)) {
-                List<T> children = handler.getChildren(t);
-                List<T> filteredChildren = filter(children, filter, handler);
-                if(!filteredChildren.isEmpty()) {
-                    resultList.add(handler.createFilteredContainer(t, filteredChildren));
-                }
+
+    /**
+     * adapts the given iterator, e.g. a {@link ChildIterator}, to an iterator of batches of the given size. The last
+     * batch may be smaller.
+     * 
+     * @param <T>
+     *            elements type
+     * @param iterator
+     *            the source iterator
+     * @param size
+     *            the batch size
+     * @param reuseBuffer
+     *            refill one buffer for all batches, so a batch is only valid until the next one is requested.
+     * @return the batch iterator
+     */
+    public static <T> Iterator<List<T>> batches(Iterator<T> iterator, int size, boolean reuseBuffer) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        return new BatchIterator<T>(iterator, size, reuseBuffer);
+    }
+
+    private static final class BatchIterator<T> implements Iterator<List<T>> {
+
+        private final Iterator<T> source;
+
+        private final int size;
+
+        private final boolean reuseBuffer;
+
+        private List<T> buffer;
+
+        BatchIterator(Iterator<T> source, int size, boolean reuseBuffer) {
+            this.source = source;
+            this.size = size;
+            this.reuseBuffer = reuseBuffer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return source.hasNext();
+        }
+
+        @Override
+        public List<T> next() {
+            if (!source.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (buffer == null || !reuseBuffer) {
+                buffer = new ArrayList<T>(Math.min(size, 1024));
             } else {
-                if(filter.accept(t)) {
-                    resultList.add(t);
-                }
+                buffer.clear();
             }
+            for (int i = 0; i < size && source.hasNext(); i++) {
+                buffer.add(source.next());
+            }
+            return buffer;
         }
-        return resultList;
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("read only iterator");
+        }
+    }
+
+    /**
+     * merges all elements from the given array of sets,which are matching the given filter.
+     * 
+     * @param <T>
+     *            the elements type
+     * @param filter
+     *            the decision maker
+     * @param sets
+     *            array of sets containing elements of type T to be merged
+     * @return set with elements of type T containing all those elements form the source sets, which are accepted by the
+     *         filter.
+     * @see #union(IFilter, Collection)
+     */
+    public static <T> Set<T> merge(IFilter<? super T> filter, Set<T>... sets) {
+        if (sets.length == 1 && sets[0] != null) {
+            return filter(sets[0], filter);
+        }
+        int size = 0;
+        for (Set<T> set : sets) {
+            if (set != null) {
+                size += set.size();
+            }
+        }
+        Set<T> resultSet = newIdentitySet(size);
+        for (Set<T> set : sets) {
+            if (set != null) {
+                for (T t : set) {
+                    if (filter == null || filter.accept(t)) {
+                        resultSet.add(t);
+                    }
+                }
+            }
+        }
+        return resultSet;
+    }
+
+    /**
+     * merges all elements from the given sorted sets, which are matching the given filter. Unlike
+     * {@link #merge(IFilter, Set...)} elements are compared by the comparator of the sets. The sets are merged in one
+     * pass over their sorted elements, which costs O(N log k) for <i>N</i> elements of <i>k</i> sets. The resulting tree
+     * set is built from the merged elements in linear time.
+     * 
+     * @param <T>
+     *            the elements type
+     * @param filter
+     *            the decision maker, might be null, which means accept all.
+     * @param sets
+     *            the sets to merge, have to share the same comparator. Null sets are ignored.
+     * @return sorted set of the accepted elements. Of several equal elements the first accepted one of the first set is
+     *         kept.
+     */
+    public static <T> SortedSet<T> union(IFilter<? super T> filter, Collection<? extends SortedSet<T>> sets) {
+        final Comparator<? super T> comparator = sharedComparator(sets);
+        PriorityQueue<Cursor<T>> heads = new PriorityQueue<Cursor<T>>(Math.max(1, sets.size()),
+                new Comparator<Cursor<T>>() {
+
+                    @Override
+                    public int compare(Cursor<T> c1, Cursor<T> c2) {
+                        int result = CollectionUtils.compare(comparator, c1.head, c2.head);
+                        // the earlier set first keeps its element
+                        return result != 0 ? result : c1.index - c2.index;
+                    }
+                });
+        int index = 0;
+        for (SortedSet<T> set : sets) {
+            if (set != null) {
+                Cursor<T> cursor = new Cursor<T>(set, index);
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+            index++;
+        }
+        List<T> resultList = new ArrayList<T>();
+        T last = null;
+        while (!heads.isEmpty()) {
+            Cursor<T> cursor = heads.poll();
+            T t = cursor.head;
+            if ((resultList.isEmpty() || compare(comparator, last, t) != 0) && (filter == null || filter.accept(t))) {
+                resultList.add(t);
+                last = t;
+            }
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return sortedSet(resultList, comparator);
+    }
+
+    /**
+     * determines the elements contained in all given sorted sets. The sets are intersected in one pass over their
+     * sorted elements.
+     * 
+     * @param <T>
+     *            the elements type
+     * @param sets
+     *            the sets to intersect, have to share the same comparator and may not be null.
+     * @return sorted set of the elements of the first set, which are contained in all other sets.
+     */
+    public static <T> SortedSet<T> intersection(Collection<? extends SortedSet<T>> sets) {
+        Comparator<? super T> comparator = sharedComparator(sets);
+        List<Cursor<T>> cursors = new ArrayList<Cursor<T>>(sets.size());
+        for (SortedSet<T> set : sets) {
+            Cursor<T> cursor = new Cursor<T>(set, cursors.size());
+            if (!cursor.advance()) {
+                return sortedSet(new ArrayList<T>(), comparator);
+            }
+            cursors.add(cursor);
+        }
+        if (cursors.isEmpty()) {
+            return sortedSet(new ArrayList<T>(), comparator);
+        }
+        List<T> resultList = new ArrayList<T>();
+        intersect(cursors, comparator, resultList);
+        return sortedSet(resultList, comparator);
+    }
+
+    /**
+     * advances the cursors in turn up to the greatest head, until all heads are equal.
+     */
+    private static <T> void intersect(List<Cursor<T>> cursors, Comparator<? super T> comparator, List<T> resultList) {
+        int count = cursors.size();
+        T target = cursors.get(0).head;
+        int matching = 0;
+        int i = 0;
+        while (true) {
+            Cursor<T> cursor = cursors.get(i);
+            int result = compare(comparator, cursor.head, target);
+            while (result < 0) {
+                if (!cursor.advance()) {
+                    return;
+                }
+                result = compare(comparator, cursor.head, target);
+            }
+            if (result > 0) {
+                target = cursor.head;
+                matching = 1;
+            } else if (++matching == count) {
+                resultList.add(cursors.get(0).head);
+                for (Cursor<T> c : cursors) {
+                    if (!c.advance()) {
+                        return;
+                    }
+                }
+                target = cursors.get(0).head;
+                matching = 0;
+                i = 0;
+                continue;
+            }
+            i = (i + 1) % count;
+        }
+    }
+
+    /**
+     * determines the elements of the given sorted set, which are not contained in any of the other sorted sets. The sets
+     * are compared in one pass over their sorted elements.
+     * 
+     * @param <T>
+     *            the elements type
+     * @param set
+     *            the source set
+     * @param others
+     *            the sets of the elements to remove, have to share the comparator of the source set. Null sets are
+     *            ignored.
+     * @return sorted set of the remaining elements
+     */
+    public static <T> SortedSet<T> difference(SortedSet<T> set, Collection<? extends SortedSet<T>> others) {
+        Comparator<? super T> comparator = set.comparator();
+        List<Cursor<T>> cursors = new ArrayList<Cursor<T>>(others.size());
+        for (SortedSet<T> other : others) {
+            if (other != null) {
+                if (!equal(comparator, other.comparator())) {
+                    throw new IllegalArgumentException("sets must share one comparator");
+                }
+                Cursor<T> cursor = new Cursor<T>(other, cursors.size());
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+        List<T> resultList = new ArrayList<T>();
+        for (T t : set) {
+            boolean contained = false;
+            for (Iterator<Cursor<T>> it = cursors.iterator(); it.hasNext() && !contained;) {
+                Cursor<T> cursor = it.next();
+                int result = compare(comparator, cursor.head, t);
+                while (result < 0 && cursor.advance()) {
+                    result = compare(comparator, cursor.head, t);
+                }
+                if (result < 0) {
+                    // exhausted
+                    it.remove();
+                } else {
+                    contained = result == 0;
+                }
+            }
+            if (!contained) {
+                resultList.add(t);
+            }
+        }
+        return sortedSet(resultList, comparator);
+    }
+
+    private static final class Cursor<T> {
+
+        private final Iterator<T> iterator;
+
+        private final int index;
+
+        private T head;
+
+        Cursor(Set<T> set, int index) {
+            this.iterator = set.iterator();
+            this.index = index;
+        }
+
+        boolean advance() {
+            if (iterator.hasNext()) {
+                head = iterator.next();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static <T> Comparator<? super T> sharedComparator(Collection<? extends SortedSet<T>> sets) {
+        Comparator<? super T> comparator = null;
+        boolean first = true;
+        for (SortedSet<T> set : sets) {
+            if (set != null) {
+                if (first) {
+                    comparator = set.comparator();
+                    first = false;
+                } else if (!equal(comparator, set.comparator())) {
+                    throw new IllegalArgumentException("sets must share one comparator");
+                }
+            }
+        }
+        return comparator;
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> int compare(Comparator<? super T> comparator, T t1, T t2) {
+        return comparator != null ? comparator.compare(t1, t2) : ((Comparable<Object>) t1).compareTo(t2);
+    }
+
+    /**
+     * creates a tree set of the given sorted distinct elements. The elements are added as sorted set sharing the
+     * comparator of the tree set, so the tree is built in linear time instead of inserting every element.
+     */
+    private static <T> SortedSet<T> sortedSet(List<T> sorted, Comparator<? super T> comparator) {
+        SortedSet<T> resultSet = new TreeSet<T>(comparator);
+        resultSet.addAll(new SortedListView<T>(sorted, comparator));
+        return resultSet;
+    }
+
+    /**
+     * read only sorted set view of a sorted list of distinct elements, only supporting the iteration.
+     */
+    private static final class SortedListView<T> extends AbstractSet<T> implements SortedSet<T> {
+
+        private final List<T> sorted;
+
+        private final Comparator<? super T> comparator;
+
+        SortedListView(List<T> sorted, Comparator<? super T> comparator) {
+            this.sorted = sorted;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return Collections.unmodifiableList(sorted).iterator();
+        }
+
+        @Override
+        public int size() {
+            return sorted.size();
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public T first() {
+            if (sorted.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return sorted.get(0);
+        }
+
+        @Override
+        public T last() {
+            if (sorted.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return sorted.get(sorted.size() - 1);
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            throw new UnsupportedOperationException("iteration only view");
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            throw new UnsupportedOperationException("iteration only view");
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            throw new UnsupportedOperationException("iteration only view");
+        }
+    }
+
+    /**
+     * gets all map entries from the given map, where the key equals the given lead condition or starts with the lead
+     * condition followed by the separator. For a {@link NavigableMap} using the natural key order, e.g. a
+     * {@link TreeMap} without comparator, only the matching key range is visited, which costs O(log n + matches)
+     * instead of a scan over all entries.
+     * 
+     * @param <V>
+     * @param map
+     * @param leadCondition
+     * @param separator
+     * @return the matching entries in map iteration order
+     */
+    public static <V> List<Map.Entry<String, V>> getAll(Map<String, V> map, String leadCondition, String separator) {
+        if (map instanceof NavigableMap && ((NavigableMap<String, V>) map).comparator() == null) {
+            return getAll((NavigableMap<String, V>) map, leadCondition, separator);
+        }
+        List<Entry<String, V>> resultList = new ArrayList<Entry<String, V>>();
+        final Set<Entry<String, V>> entrySet = map.entrySet();
+        final int leadLength = leadCondition.length();
+        for (Entry<String, V> entry : entrySet) {
+            final String key = entry.getKey();
+            if (key.startsWith(leadCondition)) {
+                if (key.length() == leadLength || key.startsWith(separator, leadLength)) {
+                    resultList.add(entry);
+                }
+            }
+        }
+        return resultList;
+    }
+
+    private static <V> List<Map.Entry<String, V>> getAll(NavigableMap<String, V> map, String leadCondition,
+            String separator) {
+        List<Entry<String, V>> resultList = new ArrayList<Entry<String, V>>();
+        String prefix = leadCondition + separator;
+        if (separator.length() > 0) {
+            resultList.addAll(map.subMap(leadCondition, true, leadCondition, true).entrySet());
+        }
+        String bound = prefixBound(prefix);
+        Map<String, V> range = bound != null ? map.subMap(prefix, true, bound, false) : map.tailMap(prefix, true);
+        resultList.addAll(range.entrySet());
+        return resultList;
+    }
+
+    /**
+     * determines the smallest string greater than all strings starting with the given prefix.
+     * 
+     * @return the bound or null, if there is no such string.
+     */
+    private static String prefixBound(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    /**
+     * determines the first <i>k</i> elements of the given source in the order of the given comparator without sorting
+     * the whole source. The elements are selected with a bounded heap of <i>k</i> elements, which costs O(n log k).
+     * 
+     * @param <T>
+     *            elements type
+     * @param source
+     *            the source elements
+     * @param k
+     *            the maximum number of elements to return
+     * @param comparator
+     *            the order of the elements
+     * @return the first <i>k</i> elements in comparator order. Equal elements keep their encounter order, of several
+     *         equal elements at the boundary the first encountered are kept.
+     */
+    public static <T> List<T> top(Iterable<T> source, int k, Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        TopList<T> top = new TopList<T>(k, comparator);
+        for (T t : source) {
+            top.offer(t);
+        }
+        return top.sorted();
+    }
+
+    /**
+     * sorts the first <i>k</i> positions of the given list in place, so they hold the first <i>k</i> elements in the
+     * order of the given comparator. The order of the remaining elements is undefined afterwards. The elements are
+     * selected by quickselect, which costs O(n + k log k) on average. Unlike {@link #top(Iterable, int, Comparator)}
+     * the order of equal elements is not stable.
+     * 
+     * @param <T>
+     *            elements type
+     * @param list
+     *            the list to sort partially
+     * @param k
+     *            the number of positions to sort
+     * @param comparator
+     *            the order of the elements
+     * @return the given list
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> partialSort(List<T> list, int k, Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        int size = list.size();
+        k = Math.min(k, size);
+        if (k == 0) {
+            return list;
+        }
+        Object[] a = list.toArray();
+        Comparator<Object> c = (Comparator<Object>) comparator;
+        if (k < size) {
+            select(a, k - 1, c);
+        }
+        Arrays.sort(a, 0, k, c);
+        ListIterator<T> it = list.listIterator();
+        for (Object o : a) {
+            it.next();
+            it.set((T) o);
+        }
+        return list;
+    }
+
+    /**
+     * moves the element of rank <i>n</i> to position <i>n</i>, all smaller elements before and all greater ones behind
+     * it.
+     */
+    private static void select(Object[] a, int n, Comparator<Object> c) {
+        int left = 0;
+        int right = a.length - 1;
+        while (left < right) {
+            Object pivot = a[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (c.compare(a[i], pivot) < 0) {
+                    i++;
+                }
+                while (c.compare(a[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    Object tmp = a[i];
+                    a[i++] = a[j];
+                    a[j--] = tmp;
+                }
+            }
+            if (n <= j) {
+                right = j;
+            } else if (n >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static final class TopEntry<T> {
+
+        private final T value;
+        private final long sequence;
+
+        TopEntry(T value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * keeps the first <i>n</i> offered values in a bounded heap, which is sorted on first read.
+     */
+    private static final class TopList<T> extends AbstractList<T> {
+
+        private final int n;
+        private final Comparator<? super T> comparator;
+        private final Comparator<TopEntry<T>> order;
+        // the greatest kept value is the head of the heap
+        private final PriorityQueue<TopEntry<T>> heap;
+        private long sequence;
+        private List<T> sorted;
+
+        TopList(int n, Comparator<? super T> comparator) {
+            this.n = n;
+            this.comparator = comparator;
+            this.order = topEntryOrder(comparator);
+            this.heap = new PriorityQueue<TopEntry<T>>(Math.max(1, Math.min(n, 16)), Collections.reverseOrder(order));
+        }
+
+        void offer(T value) {
+            if (heap.size() < n) {
+                heap.add(new TopEntry<T>(value, sequence));
+                sorted = null;
+            } else if (n > 0 && comparator.compare(value, heap.peek().value) < 0) {
+                heap.poll();
+                heap.add(new TopEntry<T>(value, sequence));
+                sorted = null;
+            }
+            sequence++;
+        }
+
+        List<T> sorted() {
+            if (sorted == null) {
+                List<TopEntry<T>> entries = new ArrayList<TopEntry<T>>(heap);
+                Collections.sort(entries, order);
+                sorted = new ArrayList<T>(entries.size());
+                for (TopEntry<T> entry : entries) {
+                    sorted.add(entry.value);
+                }
+            }
+            return sorted;
+        }
+
+        @Override
+        public T get(int index) {
+            return sorted().get(index);
+        }
+
+        @Override
+        public int size() {
+            return heap.size();
+        }
+    }
+
+    /**
+     * orders by value and equal values by encounter sequence.
+     */
+    private static <T> Comparator<TopEntry<T>> topEntryOrder(final Comparator<? super T> comparator) {
+        return new Comparator<TopEntry<T>>() {
+
+            @Override
+            public int compare(TopEntry<T> o1, TopEntry<T> o2) {
+                int result = comparator.compare(o1.value, o2.value);
+                if (result != 0) {
+                    return result;
+                }
+                return o1.sequence < o2.sequence ? -1 : o1.sequence == o2.sequence ? 0 : 1;
+            }
+        };
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final Comparator<Enum> ORDINAL_COMPARATOR = new Comparator<Enum>() {
+
+        @Override
+        public int compare(Enum o1, Enum o2) {
+            return o1.ordinal() - o2.ordinal();
+        }
+    };
+
+    /**
+     * sorts the given list of enum constants by their ordinal. The list is sorted in place by counting the constants per
+     * ordinal, which costs O(n + k) for <i>n</i> elements of an enum having <i>k</i> constants. Lists mixing the
+     * constants of several enums are sorted by a stable comparison sort instead.
+     * 
+     * @param source
+     *            the list to sort, may not contain null.
+     * @return the given list
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+	public static <E extends Enum> List<E> sort(List<E> source) {
+        if (source.size() < 2) {
+            return source;
+        }
+        Class<?> type = null;
+        for (E e : source) {
+            if (type == null) {
+                type = e.getDeclaringClass();
+            } else if (type != e.getDeclaringClass()) {
+                Collections.sort(source, ORDINAL_COMPARATOR);
+                return source;
+            }
+        }
+        Object[] constants = type.getEnumConstants();
+        int[] counts = new int[constants.length];
+        for (E e : source) {
+            counts[e.ordinal()]++;
+        }
+        ListIterator<E> it = source.listIterator();
+        for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+            for (int i = counts[ordinal]; i > 0; i--) {
+                it.next();
+                it.set((E) constants[ordinal]);
+            }
+        }
+        return source;
+    }
+
+    /**
+     * groups the values by the enum constants of the given criteria into an {@link EnumMap}, which iterates the groups in
+     * ordinal order. Null keys are ignored.
+     * 
+     * @param iterable
+     *            the values
+     * @param criteria
+     *            determines the groups of every value
+     * @param keyType
+     *            the enum type of the keys
+     * @return the values per group
+     */
+    public static <K extends Enum<K>, V> EnumMap<K, List<V>> groupByEnum(Iterable<V> iterable,
+            GroupCriteria<K, V> criteria, Class<K> keyType) {
+        EnumMap<K, List<V>> map = new EnumMap<K, List<V>>(keyType);
+        for (V v : iterable) {
+            K[] groups = criteria.getGroups(v);
+            if (groups != null) {
+                for (K key : groups) {
+                    if (key == null) {
+                        continue;
+                    }
+                    List<V> list = map.get(key);
+                    if (list == null) {
+                        list = new ArrayList<V>();
+                        map.put(key, list);
+                    }
+                    list.add(v);
+                }
+            }
+        }
+        return map;
+    }
+
+    public static interface GroupCriteria<K, V> {
+        K[] getGroups(V value);
+    }
+    
+    public static interface GroupedComparator<K, V> {
+        int compare(K key, V v1, V v2);
+    }
+
+    public static <K, V> Map<K, List<V>> groupByKey(Iterable<V> iterable, GroupCriteria<K, V> criteria) {
+        return groupByKey(iterable, criteria, (Comparator<V>)null, null);
+    }
+
+    public static <K, V> Map<K, List<V>> groupByKey(Iterable<V> iterable, GroupCriteria<K, V> criteria,
+            Comparator<V> valueComparator, Comparator<K> keyComparator) {
+        Map<K, List<V>> map = createMap(iterable, criteria, keyComparator);
+        if (valueComparator != null) {
+            for (List<V> list : map.values()) {
+                Collections.sort(list, valueComparator);
+            }
+        }
+        return map;
+    }
+
+    public static <K, V> Map<K, List<V>> groupByKey(Iterable<V> iterable, GroupCriteria<K, V> criteria,
+            final GroupedComparator<K, V> valueComparator, Comparator<K> keyComparator) {
+        Map<K, List<V>> map = createMap(iterable, criteria, keyComparator);
+        if (valueComparator != null) {
+            for (Map.Entry<K, List<V>> e : map.entrySet()) {
+                final K key = e.getKey();
+                List<V> list = e.getValue();
+                Comparator<V> comparator = new Comparator<V>() {
+                    
+                    @Override
+                    public int compare(V v1, V v2) {
+                        return valueComparator.compare(key, v1, v2);
+                    }
+                };
+                Collections.sort(list, comparator);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * groups the values by the keys of the given criteria and keeps only the first <i>k</i> values of every group in the
+     * order of the given value comparator, using {@link #topAggregator(int, Comparator)}. Unlike sorting whole groups,
+     * no group holds more than <i>k</i> values.
+     * 
+     * @param iterable
+     *            the values
+     * @param criteria
+     *            determines the groups of every value
+     * @param k
+     *            the maximum number of values per group, has to be positive
+     * @param valueComparator
+     *            the order of the values of every group
+     * @param keyComparator
+     *            sorts the groups, may be null
+     * @return the first <i>k</i> values per group, sorted by the value comparator. Equal values keep their encounter
+     *         order.
+     */
+    public static <K, V> Map<K, List<V>> groupByKey(Iterable<V> iterable, GroupCriteria<K, V> criteria, int k,
+            Comparator<? super V> valueComparator, Comparator<K> keyComparator) {
+        return groupByKey(iterable, criteria, CollectionUtils.<V> topAggregator(k, valueComparator), keyComparator);
+    }
+
+    /**
+     * groups the values of the given list like {@link #groupByKey(Iterable, GroupCriteria, Comparator, Comparator)}, but
+     * in parallel. The list is split into chunks grouped into separate maps by the given executor. The chunk maps are
+     * merged in list order, so every group keeps the encounter order of its values before it is sorted. Finally the
+     * groups are sorted concurrently. Passing a <code>java.util.concurrent.ForkJoinPool</code> as executor is
+     * recommended.
+     * 
+     * @param list the values
+     * @param criteria determines the groups of every value. Called concurrently, thus has to be thread safe.
+     * @param valueComparator sorts the values of every group, may be null
+     * @param keyComparator sorts the groups, may be null
+     * @param executor the executor grouping the chunks. might be null, which means grouping sequentially.
+     * @param threshold lists having less elements are grouped sequentially
+     * @return the values per group
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the chunks.
+     */
+    public static <K, V> Map<K, List<V>> parallelGroupByKey(List<V> list, final GroupCriteria<K, V> criteria,
+            final Comparator<V> valueComparator, Comparator<K> keyComparator, ExecutorService executor, int threshold)
+            throws InterruptedException {
+        if (executor == null || list.size() < threshold || list.size() < 2) {
+            return groupByKey(list, criteria, valueComparator, keyComparator);
+        }
+        List<Callable<Map<K, List<V>>>> tasks = new ArrayList<Callable<Map<K, List<V>>>>();
+        for (final List<V> chunk : chunks(list)) {
+            tasks.add(new Callable<Map<K, List<V>>>() {
+
+                @Override
+                public Map<K, List<V>> call() throws Exception {
+                    return createMap(chunk, criteria, null);
+                }
+            });
+        }
+        return mergeGroups(executor.invokeAll(tasks), valueComparator, keyComparator, executor);
+    }
+
+    /**
+     * merges the group maps of consecutive chunks in chunk order and sorts the merged groups concurrently.
+     */
+    static <K, V> Map<K, List<V>> mergeGroups(List<Future<Map<K, List<V>>>> chunkGroups,
+            final Comparator<? super V> valueComparator, Comparator<K> keyComparator, ExecutorService executor)
+            throws InterruptedException {
+        Map<K, List<V>> map = keyComparator != null ? new TreeMap<K, List<V>>(keyComparator)
+                : new HashMap<K, List<V>>();
+        for (Future<Map<K, List<V>>> future : chunkGroups) {
+            for (Map.Entry<K, List<V>> e : result(future).entrySet()) {
+                List<V> group = map.get(e.getKey());
+                if (group == null) {
+                    map.put(e.getKey(), e.getValue());
+                } else {
+                    group.addAll(e.getValue());
+                }
+            }
+        }
+        if (valueComparator != null && !map.isEmpty()) {
+            List<Callable<Object>> sorts = new ArrayList<Callable<Object>>();
+            for (final List<List<V>> groups : chunks(new ArrayList<List<V>>(map.values()))) {
+                sorts.add(new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        for (List<V> group : groups) {
+                            Collections.sort(group, valueComparator);
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Object> future : executor.invokeAll(sorts)) {
+                result(future);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * defines the ability to fold the values of a group into an accumulator, see
+     * {@link CollectionUtils#groupByKey(Iterable, GroupCriteria, GroupAggregator, Comparator)}.
+     * 
+     * @param <V> value type
+     * @param <A> accumulator type
+     */
+    public static interface GroupAggregator<V, A> {
+
+        /**
+         * @return the accumulator of an empty group
+         */
+        A create();
+
+        /**
+         * adds a value to the accumulator of its group.
+         * 
+         * @return the new accumulator, may be the given one.
+         */
+        A add(A accumulator, V value);
+    }
+
+    /**
+     * groups the values by the keys of the given criteria and folds the values of every group with the given aggregator.
+     * Unlike {@link #groupByKey(Iterable, GroupCriteria)} no per group value lists are built.
+     * 
+     * @param iterable the values
+     * @param criteria determines the groups of every value
+     * @param aggregator folds the values of a group
+     * @param keyComparator sorts the groups, may be null
+     * @return the accumulator per group
+     */
+    public static <K, V, A> Map<K, A> groupByKey(Iterable<V> iterable, GroupCriteria<K, ? super V> criteria,
+            GroupAggregator<? super V, A> aggregator, Comparator<K> keyComparator) {
+        Map<K, A> map = keyComparator != null ? new TreeMap<K, A>(keyComparator) : new HashMap<K, A>();
+        for (V v : iterable) {
+            K[] groups = criteria.getGroups(v);
+            if (groups != null) {
+                for (K key : groups) {
+                    A accumulator = map.get(key);
+                    if (accumulator == null && !map.containsKey(key)) {
+                        accumulator = aggregator.create();
+                    }
+                    map.put(key, aggregator.add(accumulator, v));
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * creates an aggregator counting the values of a group.
+     */
+    public static <V> GroupAggregator<V, Integer> countAggregator() {
+        return new GroupAggregator<V, Integer>() {
+
+            @Override
+            public Integer create() {
+                return 0;
+            }
+
+            @Override
+            public Integer add(Integer accumulator, V value) {
+                return accumulator + 1;
+            }
+        };
+    }
+
+    /**
+     * creates an aggregator summing up the numbers the given transformer determines for the values of a group. Null
+     * numbers are skipped.
+     */
+    public static <V> GroupAggregator<V, Long> sumAggregator(final ITransformer<? super V, ? extends Number> number) {
+        return new GroupAggregator<V, Long>() {
+
+            @Override
+            public Long create() {
+                return 0L;
+            }
+
+            @Override
+            public Long add(Long accumulator, V value) {
+                Number n = number.transform(value);
+                return n == null ? accumulator : accumulator + n.longValue();
+            }
+        };
+    }
+
+    /**
+     * creates an aggregator determining the minimum value of a group. Of several minimal values the first one is kept.
+     */
+    public static <V> GroupAggregator<V, V> minAggregator(final Comparator<? super V> comparator) {
+        return new GroupAggregator<V, V>() {
+
+            @Override
+            public V create() {
+                return null;
+            }
+
+            @Override
+            public V add(V accumulator, V value) {
+                return accumulator == null || comparator.compare(value, accumulator) < 0 ? value : accumulator;
+            }
+        };
+    }
+
+    /**
+     * creates an aggregator determining the maximum value of a group. Of several maximal values the first one is kept.
+     */
+    public static <V> GroupAggregator<V, V> maxAggregator(final Comparator<? super V> comparator) {
+        return minAggregator(Collections.reverseOrder(comparator));
+    }
+
+    /**
+     * creates an aggregator keeping the first <i>n</i> values of a group in the order of the given comparator. Equal
+     * values keep their encounter order. Every group keeps its values in a bounded heap, which costs O(log n) per value.
+     * The returned lists are read only and sorted once on first access.
+     */
+    public static <V> GroupAggregator<V, List<V>> topAggregator(final int n, final Comparator<? super V> comparator) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        return new GroupAggregator<V, List<V>>() {
+
+            @Override
+            public List<V> create() {
+                return new TopList<V>(n, comparator);
+            }
+
+            @Override
+            public List<V> add(List<V> top, V value) {
+                ((TopList<V>) top).offer(value);
+                return top;
+            }
+        };
+    }
+
+    static <V, K> Map<K, List<V>> createMap(Iterable<V> c, GroupCriteria<K, ? super V> criteria,
+            Comparator<K> keyComparator) {
+        Map<K, List<V>> map = keyComparator != null ? new TreeMap<K, List<V>>(keyComparator) : new HashMap<K, List<V>>();
+        for (V v : c) {
+            K[] groups = criteria.getGroups(v);
+            if(groups != null) {
+                for (K key : groups) {
+                    List<V> list = map.get(key);
+                    if (list == null) {
+                        list = new ArrayList<V>();
+                        map.put(key, list);
+                    }
+                    list.add(v);
+                }
+            }
+        }
+        return map;
+    }
+    
+    
+    public static interface IContainerHandler<T> {
+        boolean isContainer(T t);
+        List<T> getChildren(T t);
+        T createFilteredContainer(T t, List<T> list);
+    }
+    
+    public static <T> List<T> filter(List<T> source, IFilter<? super T> filter, IContainerHandler<T> handler) {
+        if(filter == null) return source;
+        if(handler == null) return filter(source, filter);
+        return filter(source, filter, handler, false);
+    }
+
+    /**
+     * filters the given hierarchy like {@link #filter(List, IFilter, IContainerHandler)}.
+     * 
+     * @param reuseUnchanged
+     *            return containers, which children are all accepted, instead of creating a new filtered container.
+     *            Only valid, if the source containers are filtered containers themselves.
+     */
+    static <T> List<T> filter(List<T> source, IFilter<? super T> filter, IContainerHandler<T> handler,
+            boolean reuseUnchanged) {
+        List<T> resultList = new ArrayList<T>();
+        for(T t: source) {
+            if(handler.isContainer(t)) {
+                List<T> children = handler.getChildren(t);
+                List<T> filteredChildren = filter(children, filter, handler, reuseUnchanged);
+                if(!filteredChildren.isEmpty()) {
+                    if (reuseUnchanged && sameElements(children, filteredChildren)) {
+                        resultList.add(t);
+                    } else {
+                        resultList.add(handler.createFilteredContainer(t, filteredChildren));
+                    }
+                }
+            } else {
+                if(filter.accept(t)) {
+                    resultList.add(t);
+                }
+            }
+        }
+        return resultList;
+    }
+
+    private static boolean sameElements(List<?> l1, List<?> l2) {
+        if (l1.size() != l2.size()) {
+            return false;
+        }
+        Iterator<?> it = l2.iterator();
+        for (Object o : l1) {
+            if (o != it.next()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * filters the given hierarchy like {@link #filter(List, IFilter, IContainerHandler)}, but in parallel. The top
+     * level elements are split into chunks, which containers are filtered concurrently by the given executor. The
+     * result keeps the source order.
+     * 
+     * @param <T>
+     *            elements type
+     * @param source
+     *            the top level elements
+     * @param filter
+     *            decision maker. Called concurrently, thus has to be thread safe.
+     * @param handler
+     *            the container handler. Called concurrently, thus has to be thread safe.
+     * @param executor
+     *            the executor filtering the chunks. might be null, which means filtering sequentially.
+     * @param threshold
+     *            sources having less top level elements are filtered sequentially
+     * @return the filtered top level elements
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting for the chunks.
+     */
+    public static <T> List<T> parallelFilter(List<T> source, IFilter<? super T> filter, IContainerHandler<T> handler,
+            ExecutorService executor, int threshold) throws InterruptedException {
+        if(filter == null) return source;
+        if(handler == null) return parallelFilter(source, filter, executor, threshold);
+        return parallelFilter(source, filter, handler, false, executor, threshold);
+    }
+
+    static <T> List<T> parallelFilter(List<T> source, final IFilter<? super T> filter,
+            final IContainerHandler<T> handler, final boolean reuseUnchanged, ExecutorService executor, int threshold)
+            throws InterruptedException {
+        if (executor == null || source.size() < threshold || source.size() < 2) {
+            return filter(source, filter, handler, reuseUnchanged);
+        }
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>();
+        for (final List<T> chunk : chunks(source)) {
+            tasks.add(new Callable<List<T>>() {
+
+                @Override
+                public List<T> call() throws Exception {
+                    return filter(chunk, filter, handler, reuseUnchanged);
+                }
+            });
+        }
+        return concat(executor.invokeAll(tasks));
     }
 
 }
@@ -0,0 +1,652 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.flowr.utils.collections.CollectionUtils.GroupCriteria;
+
+/**
+ * Sorting and grouping of data sets larger than the available memory. The elements are collected until the memory
+ * budget is reached, then sorted and spilled as a run to a temporary file through an {@link IElementCodec}. Finally
+ * all runs are merged, at most {@link #setMaxFanIn(int) max fan in} runs at once. Sorting is stable. Usage
+ *
+ * <pre>
+ * ExternalSorter sorter = new ExternalSorter(1000000);
+ * ExternalSorter.SortedIterator&lt;String&gt; it = sorter.sort(lines, collator, ExternalSorter.STRING_CODEC);
+ * try {
+ *    while (it.hasNext()) {
+ *       out.println(it.next());
+ *    }
+ * } finally {
+ *    it.close();
+ * }
+ * </pre>
+ *
+ * The default weight of an element is 1, thus the budget limits the number of elements held in memory. Override
+ * {@link #weigh(Object)} to charge estimated bytes instead.
+ *
+ * @author krausesv
+ */
+public class ExternalSorter {
+
+   /**
+    * defines the ability to write elements to and read them from a spilled run.
+    *
+    * @author krausesv
+    *
+    * @param <T> element type
+    */
+   public static interface IElementCodec<T> {
+
+      void write(DataOutput out, T element) throws IOException;
+
+      T read(DataInput in) throws IOException;
+   }
+
+   /**
+    * defines the ability to receive the groups of
+    * {@link ExternalSorter#groupByKey(Iterable, GroupCriteria, Comparator, IElementCodec, Comparator, IElementCodec, IGroupConsumer)}
+    *
+    * @author krausesv
+    *
+    * @param <K> key type
+    * @param <V> value type
+    */
+   public static interface IGroupConsumer<K, V> {
+
+      /**
+       * receives a group.
+       *
+       * @param key the group key
+       * @param values the values of the group, read from the merged runs while iterating. Valid only during this call,
+       *           values not iterated are skipped.
+       */
+      void accept(K key, Iterator<V> values);
+   }
+
+   /**
+    * codec of strings of any length.
+    */
+   public static final IElementCodec<String> STRING_CODEC = new IElementCodec<String>() {
+
+      @Override
+      public void write(DataOutput out, String element) throws IOException {
+         out.writeInt(element.length());
+         out.writeChars(element);
+      }
+
+      @Override
+      public String read(DataInput in) throws IOException {
+         char[] chars = new char[in.readInt()];
+         for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+         }
+         return new String(chars);
+      }
+   };
+
+   /**
+    * codec of integers.
+    */
+   public static final IElementCodec<Integer> INTEGER_CODEC = new IElementCodec<Integer>() {
+
+      @Override
+      public void write(DataOutput out, Integer element) throws IOException {
+         out.writeInt(element);
+      }
+
+      @Override
+      public Integer read(DataInput in) throws IOException {
+         return in.readInt();
+      }
+   };
+
+   /**
+    * codec of longs.
+    */
+   public static final IElementCodec<Long> LONG_CODEC = new IElementCodec<Long>() {
+
+      @Override
+      public void write(DataOutput out, Long element) throws IOException {
+         out.writeLong(element);
+      }
+
+      @Override
+      public Long read(DataInput in) throws IOException {
+         return in.readLong();
+      }
+   };
+
+   private static final int BUFFER_SIZE = 65536;
+
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   private static final Comparator<Object> NATURAL_ORDER = new Comparator<Object>() {
+
+      @Override
+      public int compare(Object o1, Object o2) {
+         return ((Comparable) o1).compareTo(o2);
+      }
+   };
+
+   /**
+    * Iterator over the sorted elements. Has to be closed, if not iterated until the end, to delete the remaining
+    * temporary files.
+    *
+    * @author krausesv
+    *
+    * @param <T> element type
+    */
+   public static final class SortedIterator<T> implements Iterator<T>, Closeable {
+
+      private final List<Run<T>> runs;
+      private final PriorityQueue<Run<T>> heads;
+
+      SortedIterator(List<Run<T>> runs, final Comparator< ? super T> comparator) throws IOException {
+         this.runs = runs;
+         heads = new PriorityQueue<Run<T>>(Math.max(1, runs.size()), new Comparator<Run<T>>() {
+
+            @Override
+            public int compare(Run<T> r1, Run<T> r2) {
+               int result = comparator.compare(r1.head, r2.head);
+               // the earlier run first keeps the sort stable
+               return result != 0 ? result : r1.index - r2.index;
+            }
+         });
+         try {
+            for (Run<T> run : runs) {
+               if (run.advance()) {
+                  heads.add(run);
+               } else {
+                  run.close();
+               }
+            }
+         }
+         catch (IOException e) {
+            close();
+            throw e;
+         }
+      }
+
+      @Override
+      public boolean hasNext() {
+         return !heads.isEmpty();
+      }
+
+      @Override
+      public T next() {
+         if (heads.isEmpty()) {
+            throw new NoSuchElementException();
+         }
+         Run<T> run = heads.poll();
+         T result = run.head;
+         try {
+            if (run.advance()) {
+               heads.add(run);
+            } else {
+               run.close();
+            }
+         }
+         catch (IOException e) {
+            close();
+            throw new IllegalStateException("reading sorted run failed", e);
+         }
+         return result;
+      }
+
+      @Override
+      public void remove() {
+         throw new UnsupportedOperationException("read only iterator");
+      }
+
+      /**
+       * closes and deletes all temporary files.
+       */
+      @Override
+      public void close() {
+         heads.clear();
+         for (Run<T> run : runs) {
+            run.close();
+         }
+      }
+   }
+
+   private static abstract class Run<T> {
+
+      private final int index;
+      T head;
+
+      Run(int index) {
+         this.index = index;
+      }
+
+      abstract boolean advance() throws IOException;
+
+      abstract void close();
+   }
+
+   private static final class ListRun<T> extends Run<T> {
+
+      private final Iterator<T> elements;
+
+      ListRun(int index, List<T> elements) {
+         super(index);
+         this.elements = elements.iterator();
+      }
+
+      @Override
+      boolean advance() {
+         if (elements.hasNext()) {
+            head = elements.next();
+            return true;
+         }
+         head = null;
+         return false;
+      }
+
+      @Override
+      void close() {}
+   }
+
+   private static final class FileRun<T> extends Run<T> {
+
+      private final File file;
+      private final IElementCodec<T> codec;
+      private DataInputStream in;
+
+      FileRun(int index, File file, IElementCodec<T> codec) {
+         super(index);
+         this.file = file;
+         this.codec = codec;
+      }
+
+      @Override
+      boolean advance() throws IOException {
+         if (in == null) {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+         }
+         if (in.readBoolean()) {
+            head = codec.read(in);
+            return true;
+         }
+         head = null;
+         return false;
+      }
+
+      @Override
+      void close() {
+         if (in != null) {
+            try {
+               in.close();
+            }
+            catch (IOException e) {
+               // nothing to do, the file is deleted anyway
+            }
+            in = null;
+         }
+         file.delete();
+      }
+   }
+
+   private final long limit;
+   private int maxFanIn = 64;
+   private File tempDirectory;
+
+   /**
+    * constructor
+    *
+    * @param limit the maximum total weight of the elements held in memory
+    */
+   public ExternalSorter(long limit) {
+      if (limit < 1) {
+         throw new IllegalArgumentException("limit must be positive");
+      }
+      this.limit = limit;
+   }
+
+   /**
+    * sets the directory of the temporary files.
+    *
+    * @param tempDirectory the directory or null for the default temporary directory
+    */
+   public void setTempDirectory(File tempDirectory) {
+      this.tempDirectory = tempDirectory;
+   }
+
+   /**
+    * sets the maximum number of runs merged at once, which is the maximum number of concurrently open files. More runs
+    * are merged in several passes. Default is 64.
+    *
+    * @param maxFanIn the maximum number of runs merged at once
+    */
+   public void setMaxFanIn(int maxFanIn) {
+      if (maxFanIn < 2) {
+         throw new IllegalArgumentException("maxFanIn must be at least 2");
+      }
+      this.maxFanIn = maxFanIn;
+   }
+
+   /**
+    * determines the weight of an element held in memory. For grouping the weight of the key value pair, a
+    * {@link Map.Entry}, is determined.
+    *
+    * @param element the element
+    * @return the weight, 1 by default.
+    */
+   protected long weigh(Object element) {
+      return 1;
+   }
+
+   /**
+    * sorts the given elements. If they don't exceed the memory budget, no temporary file is written.
+    *
+    * @param source the elements to sort
+    * @param comparator the order of the elements, may be null, which means the natural order
+    * @param codec the codec of spilled elements
+    * @return the sorted elements
+    * @throws IOException if writing or reading a temporary file fails.
+    */
+   public <T> SortedIterator<T> sort(Iterable<T> source, Comparator< ? super T> comparator, IElementCodec<T> codec)
+      throws IOException {
+      if (comparator == null) {
+         comparator = NATURAL_ORDER;
+      }
+      List<File> files = new ArrayList<File>();
+      boolean success = false;
+      try {
+         List<T> buffer = new ArrayList<T>();
+         long weight = 0;
+         for (T element : source) {
+            buffer.add(element);
+            weight += weigh(element);
+            if (weight >= limit) {
+               Collections.sort(buffer, comparator);
+               files.add(spill(buffer.iterator(), codec));
+               buffer.clear();
+               weight = 0;
+            }
+         }
+         Collections.sort(buffer, comparator);
+         // the last run stays in memory, so reserve a fan in slot for it
+         while (files.size() > maxFanIn - 1) {
+            files = mergePass(files, comparator, codec);
+         }
+         List<Run<T>> runs = new ArrayList<Run<T>>(files.size() + 1);
+         for (File file : files) {
+            runs.add(new FileRun<T>(runs.size(), file, codec));
+         }
+         runs.add(new ListRun<T>(runs.size(), buffer));
+         SortedIterator<T> result = new SortedIterator<T>(runs, comparator);
+         success = true;
+         return result;
+      }
+      finally {
+         if (!success) {
+            delete(files);
+         }
+      }
+   }
+
+   /**
+    * groups the values by the keys of the given criteria. The key value pairs are sorted externally by key and value,
+    * then the groups are passed to the consumer in key order. The values of a group are streamed from the merged runs,
+    * so a single group may exceed the memory budget as well.
+    *
+    * @param source the values
+    * @param criteria determines the groups of every value. Null keys are ignored.
+    * @param keyComparator the order of the groups, may be null, which means the natural order
+    * @param keyCodec the codec of spilled keys
+    * @param valueComparator sorts the values of every group, may be null, which keeps the encounter order.
+    * @param valueCodec the codec of spilled values
+    * @param consumer receives the groups
+    * @throws IOException if writing or reading a temporary file fails.
+    */
+   public <K, V> void groupByKey(final Iterable<V> source, final GroupCriteria<K, V> criteria,
+      Comparator< ? super K> keyComparator, final IElementCodec<K> keyCodec,
+      final Comparator< ? super V> valueComparator, final IElementCodec<V> valueCodec, IGroupConsumer<K, V> consumer)
+      throws IOException {
+      if (keyComparator == null) {
+         keyComparator = NATURAL_ORDER;
+      }
+      final Comparator< ? super K> keys = keyComparator;
+      Iterable<Map.Entry<K, V>> pairs = new Iterable<Map.Entry<K, V>>() {
+
+         @Override
+         public Iterator<Map.Entry<K, V>> iterator() {
+            return new PairIterator<K, V>(source.iterator(), criteria);
+         }
+      };
+      Comparator<Map.Entry<K, V>> comparator = new Comparator<Map.Entry<K, V>>() {
+
+         @Override
+         public int compare(Map.Entry<K, V> e1, Map.Entry<K, V> e2) {
+            int result = keys.compare(e1.getKey(), e2.getKey());
+            if (result != 0 || valueComparator == null) {
+               return result;
+            }
+            return valueComparator.compare(e1.getValue(), e2.getValue());
+         }
+      };
+      IElementCodec<Map.Entry<K, V>> codec = new IElementCodec<Map.Entry<K, V>>() {
+
+         @Override
+         public void write(DataOutput out, Map.Entry<K, V> element) throws IOException {
+            keyCodec.write(out, element.getKey());
+            valueCodec.write(out, element.getValue());
+         }
+
+         @Override
+         public Map.Entry<K, V> read(DataInput in) throws IOException {
+            K key = keyCodec.read(in);
+            return new AbstractMap.SimpleImmutableEntry<K, V>(key, valueCodec.read(in));
+         }
+      };
+      SortedIterator<Map.Entry<K, V>> it = sort(pairs, comparator, codec);
+      try {
+         GroupIterator<K, V> values = new GroupIterator<K, V>(it, keys);
+         while (values.nextGroup()) {
+            consumer.accept(values.key, values);
+         }
+      }
+      finally {
+         it.close();
+      }
+   }
+
+   /**
+    * iterates the values of the current group of sorted key value pairs.
+    */
+   private static final class GroupIterator<K, V> implements Iterator<V> {
+
+      private final Iterator<Map.Entry<K, V>> pairs;
+      private final Comparator< ? super K> keyComparator;
+      private K key;
+      private Map.Entry<K, V> pending;
+
+      GroupIterator(Iterator<Map.Entry<K, V>> pairs, Comparator< ? super K> keyComparator) {
+         this.pairs = pairs;
+         this.keyComparator = keyComparator;
+      }
+
+      /**
+       * skips the rest of the current group.
+       *
+       * @return true, if there is another group
+       */
+      boolean nextGroup() {
+         while (hasNext()) {
+            pending = null;
+         }
+         if (pending == null) {
+            return false;
+         }
+         key = pending.getKey();
+         return true;
+      }
+
+      @Override
+      public boolean hasNext() {
+         if (pending == null && pairs.hasNext()) {
+            pending = pairs.next();
+         }
+         return pending != null && key != null && keyComparator.compare(key, pending.getKey()) == 0;
+      }
+
+      @Override
+      public V next() {
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+         V value = pending.getValue();
+         pending = null;
+         return value;
+      }
+
+      @Override
+      public void remove() {
+         throw new UnsupportedOperationException("read only iterator");
+      }
+   }
+
+   private static final class PairIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+      private final Iterator<V> values;
+      private final GroupCriteria<K, V> criteria;
+      private V value;
+      private K[] groups;
+      private int index;
+      private Map.Entry<K, V> next;
+
+      PairIterator(Iterator<V> values, GroupCriteria<K, V> criteria) {
+         this.values = values;
+         this.criteria = criteria;
+      }
+
+      @Override
+      public boolean hasNext() {
+         while (next == null) {
+            if (groups != null && index < groups.length) {
+               K key = groups[index++];
+               if (key != null) {
+                  next = new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+               }
+            } else if (values.hasNext()) {
+               value = values.next();
+               groups = criteria.getGroups(value);
+               index = 0;
+            } else {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      @Override
+      public Map.Entry<K, V> next() {
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+         Map.Entry<K, V> result = next;
+         next = null;
+         return result;
+      }
+
+      @Override
+      public void remove() {
+         throw new UnsupportedOperationException("read only iterator");
+      }
+   }
+
+   private <T> File spill(Iterator<T> elements, IElementCodec<T> codec) throws IOException {
+      File file = File.createTempFile("sort", ".run", tempDirectory);
+      boolean success = false;
+      DataOutputStream out = null;
+      try {
+         out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+         while (elements.hasNext()) {
+            out.writeBoolean(true);
+            codec.write(out, elements.next());
+         }
+         out.writeBoolean(false);
+         out.close();
+         out = null;
+         success = true;
+         return file;
+      }
+      finally {
+         if (out != null) {
+            try {
+               out.close();
+            }
+            catch (IOException e) {
+               // the original failure is thrown
+            }
+         }
+         if (!success) {
+            file.delete();
+         }
+      }
+   }
+
+   /**
+    * merges consecutive groups of runs, so the merged runs keep the run order.
+    */
+   private <T> List<File> mergePass(List<File> files, Comparator< ? super T> comparator, IElementCodec<T> codec)
+      throws IOException {
+      List<File> merged = new ArrayList<File>();
+      try {
+         for (int from = 0; from < files.size(); from += maxFanIn) {
+            List<Run<T>> runs = new ArrayList<Run<T>>();
+            for (File file : files.subList(from, Math.min(files.size(), from + maxFanIn))) {
+               runs.add(new FileRun<T>(runs.size(), file, codec));
+            }
+            SortedIterator<T> it = new SortedIterator<T>(runs, comparator);
+            try {
+               merged.add(spill(it, codec));
+            }
+            finally {
+               it.close();
+            }
+         }
+         return merged;
+      }
+      catch (IOException e) {
+         delete(merged);
+         throw e;
+      }
+      catch (RuntimeException e) {
+         delete(merged);
+         throw e;
+      }
+   }
+
+   private static void delete(List<File> files) {
+      for (File file : files) {
+         file.delete();
+      }
+   }
+}
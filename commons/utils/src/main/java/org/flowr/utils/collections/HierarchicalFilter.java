@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.flowr.utils.IFilter;
+import org.flowr.utils.collections.CollectionUtils.IContainerHandler;
+
+/**
+ * Repeated filtering of a container hierarchy with {@link CollectionUtils#filter(List, IFilter, IContainerHandler)},
+ * e.g. while a user types a search string. The results are memoized per filter, so
+ * <ul>
+ * <li>{@link #narrow(IFilter)} filters the previous result instead of the whole source, if the new filter accepts a
+ * subset of the elements accepted by the previous one, e.g. a longer search string. Containers, which children all
+ * pass the new filter, are reused instead of created again.</li>
+ * <li>{@link #filter(IFilter)} returns the memoized result of an equal filter, e.g. after deleting the last character
+ * of the search string, without filtering again.</li>
+ * </ul>
+ * If an executor is set, the top level elements are filtered in parallel. Usage
+ *
+ * <pre>
+ * HierarchicalFilter&lt;Node&gt; filter = new HierarchicalFilter&lt;Node&gt;(roots, handler);
+ * ...
+ * view.setInput(oldText.length() &gt; 0 &amp;&amp; newText.startsWith(oldText) ? filter.narrow(new SearchFilter(newText))
+ *    : filter.filter(new SearchFilter(newText)));
+ * </pre>
+ *
+ * Instances are not thread safe.
+ *
+ * @author krausesv
+ *
+ * @param <T> elements type
+ */
+public class HierarchicalFilter<T> {
+
+   private static final class Result<T> {
+
+      private final IFilter< ? super T> filter;
+      private final List<T> elements;
+
+      Result(IFilter< ? super T> filter, List<T> elements) {
+         this.filter = filter;
+         this.elements = elements;
+      }
+   }
+
+   private final List<T> source;
+   private final IContainerHandler<T> handler;
+   // memoized results, each one a subset of its predecessor
+   private final List<Result<T>> results = new ArrayList<Result<T>>();
+   private ExecutorService executor;
+   private int threshold;
+
+   /**
+    * constructor
+    *
+    * @param source the top level elements
+    * @param handler the container handler
+    */
+   public HierarchicalFilter(List<T> source, IContainerHandler<T> handler) {
+      if (source == null || handler == null)
+         throw new NullPointerException("source and handler may not be null");
+      this.source = source;
+      this.handler = handler;
+   }
+
+   /**
+    * sets the executor filtering the top level elements in parallel.
+    *
+    * @param executor the executor or null for sequential filtering
+    * @param threshold sources having less top level elements are filtered sequentially
+    */
+   public void setExecutor(ExecutorService executor, int threshold) {
+      this.executor = executor;
+      this.threshold = threshold;
+   }
+
+   /**
+    * filters the source. If a filter equal to the given one has been applied before, its memoized result is returned.
+    *
+    * @param filter decision maker
+    * @return the filtered top level elements
+    * @throws InterruptedException if the calling thread is interrupted while waiting for the parallel filtering.
+    */
+   public List<T> filter(IFilter< ? super T> filter) throws InterruptedException {
+      if (filter == null)
+         throw new NullPointerException("filter may not be null");
+      for (int i = results.size() - 1; i >= 0; i--) {
+         if (results.get(i).filter.equals(filter)) {
+            // drop the results of the stricter filters
+            results.subList(i + 1, results.size()).clear();
+            return results.get(i).elements;
+         }
+      }
+      results.clear();
+      return apply(source, filter, false);
+   }
+
+   /**
+    * filters the previous result. The given filter has to accept only elements, which are accepted by the previously
+    * applied filter, otherwise the result lacks elements. Without previous result the source is filtered.
+    *
+    * @param filter decision maker
+    * @return the filtered top level elements
+    * @throws InterruptedException if the calling thread is interrupted while waiting for the parallel filtering.
+    */
+   public List<T> narrow(IFilter< ? super T> filter) throws InterruptedException {
+      if (filter == null)
+         throw new NullPointerException("filter may not be null");
+      if (results.isEmpty()) {
+         return apply(source, filter, false);
+      }
+      Result<T> previous = results.get(results.size() - 1);
+      if (previous.filter.equals(filter)) {
+         return previous.elements;
+      }
+      return apply(previous.elements, filter, true);
+   }
+
+   /**
+    * forgets all memoized results, e.g. after the source has been changed.
+    */
+   public void reset() {
+      results.clear();
+   }
+
+   private List<T> apply(List<T> elements, IFilter< ? super T> filter, boolean reuseUnchanged)
+      throws InterruptedException {
+      List<T> filtered = CollectionUtils.parallelFilter(elements, filter, handler, reuseUnchanged, executor, threshold);
+      results.add(new Result<T>(filter, filtered));
+      return filtered;
+   }
+}
@@ -2,28 +2,75 @@
  * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
  * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
  * http://www.eclipse.org/legal/epl-v10.html
- * 
+ *
  * Contributors: flowr.org - initial API and implementation
  ******************************************************************************/
 package org.flowr.utils.collections;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author krausesv
  * @param <T> the elements value type.
- * 
+ *
  */
 public class LazyComposite<T> extends Composite<T> {
 
-   private boolean loaded = false;
+   /**
+    * defines the ability to choose those lazy composites, which children should be loaded in background after the
+    * children of a lazy composite have been loaded.
+    *
+    * @author krausesv
+    */
+   public static interface IPrefetchPolicy {
+
+      /**
+       * determines the prefetch candidates for the given, just loaded composite.
+       *
+       * @param loaded the composite which children have just been loaded
+       * @return the composites to prefetch. may not be null, may be empty. Already loaded composites are ignored.
+       */
+      List<LazyComposite< ? >> getPrefetchCandidates(LazyComposite< ? > loaded);
+   }
+
+   /**
+    * the {@link #childCountHint()} result, if the number of children is unknown without loading them.
+    */
+   public static final int UNKNOWN_CHILD_COUNT = -1;
+
+   private volatile boolean loaded = false;
    private ReadWriteLock childAccessLock = new ReentrantReadWriteLock();
+   private Executor executor;
+   private IPrefetchPolicy prefetchPolicy;
+   private LazyCompositeBudget budget;
+   private LazyCompositeBatchLoader batchLoader;
+   private LazyCompositeStatistics statistics;
+   private boolean released;
+   // the cached children snapshot handed out while a budget is defined, reset on every change of the children
+   private volatile List<Composite< ? >> snapshot;
+   private Future<List<Composite< ? >>> pendingLoad;
+   private int pageSize;
+
+   private int pagedChildCount = UNKNOWN_CHILD_COUNT;
+   private Map<Integer, List<Composite< ? >>> pages;
 
    /**
     * constructor
-    * 
+    *
     * @param parent
     * @param object
     */
@@ -31,24 +78,534 @@ public class LazyComposite<T> extends Composite<T> {
       super(parent, object);
    }
 
+   /**
+    * creates a prefetch policy loading the children of the next <i>count</i> siblings of the loaded composite.
+    *
+    * @param count number of following siblings to prefetch
+    * @return the policy
+    */
+   public static IPrefetchPolicy prefetchSiblings(final int count) {
+      return new IPrefetchPolicy() {
+
+         @Override
+         public List<LazyComposite< ? >> getPrefetchCandidates(LazyComposite< ? > loaded) {
+            List<LazyComposite< ? >> result = new ArrayList<LazyComposite< ? >>(count);
+            Composite< ? > parent = loaded.getParent();
+            if (parent == null) {
+               return result;
+            }
+            List<Composite< ? >> siblings = new ArrayList<Composite< ? >>(parent.getChildrenList());
+            int index = siblings.indexOf(loaded);
+            for (int i = index + 1; i < siblings.size() && result.size() < count; i++) {
+               Composite< ? > sibling = siblings.get(i);
+               if (sibling instanceof LazyComposite) {
+                  result.add((LazyComposite< ? >) sibling);
+               }
+            }
+            return result;
+         }
+      };
+   }
+
+   /**
+    * creates a prefetch policy loading the children of all direct children of the loaded composite.
+    *
+    * @return the policy
+    */
+   public static IPrefetchPolicy prefetchNextLevel() {
+      return new IPrefetchPolicy() {
+
+         @Override
+         public List<LazyComposite< ? >> getPrefetchCandidates(LazyComposite< ? > loaded) {
+            List<LazyComposite< ? >> result = new ArrayList<LazyComposite< ? >>();
+            for (Composite< ? > child : loaded.getChildrenList()) {
+               if (child instanceof LazyComposite) {
+                  result.add((LazyComposite< ? >) child);
+               }
+            }
+            return result;
+         }
+      };
+   }
+
+   /**
+    * sets the executor running asynchronous and prefetch loads of this composite and all nested lazy composites, which
+    * don't define an own executor.
+    *
+    * @param executor the executor to use. might be null. Null means loading in the calling thread.
+    */
+   public void setExecutor(Executor executor) {
+      this.executor = executor;
+   }
+
+   /**
+    * gets the executor running asynchronous loads, which is either defined at this composite or inherited from the next
+    * lazy parent composite defining one.
+    *
+    * @return the executor or null, if none is defined.
+    */
+   public Executor getExecutor() {
+      for (Composite< ? > c = this; c != null; c = c.getParent()) {
+         if (c instanceof LazyComposite && ((LazyComposite< ? >) c).executor != null) {
+            return ((LazyComposite< ? >) c).executor;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * sets the prefetch policy of this composite and all nested lazy composites, which don't define an own policy.
+    * Prefetching requires an {@link #getExecutor() executor}.
+    *
+    * @param prefetchPolicy the policy. might be null. Null means no prefetching.
+    */
+   public void setPrefetchPolicy(IPrefetchPolicy prefetchPolicy) {
+      this.prefetchPolicy = prefetchPolicy;
+   }
+
+   /**
+    * gets the prefetch policy, which is either defined at this composite or inherited from the next lazy parent
+    * composite defining one.
+    *
+    * @return the policy or null, if none is defined.
+    */
+   public IPrefetchPolicy getPrefetchPolicy() {
+      for (Composite< ? > c = this; c != null; c = c.getParent()) {
+         if (c instanceof LazyComposite && ((LazyComposite< ? >) c).prefetchPolicy != null) {
+            return ((LazyComposite< ? >) c).prefetchPolicy;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * sets the memory budget shared by this composite and all nested lazy composites, which don't define an own budget.
+    *
+    * @param budget the budget. might be null. Null means loaded children are kept until they are released explicitly.
+    */
+   public void setBudget(LazyCompositeBudget budget) {
+      this.budget = budget;
+   }
+
+   /**
+    * gets the memory budget, which is either defined at this composite or inherited from the next lazy parent composite
+    * defining one.
+    *
+    * @return the budget or null, if none is defined.
+    */
+   public LazyCompositeBudget getBudget() {
+      for (Composite< ? > c = this; c != null; c = c.getParent()) {
+         if (c instanceof LazyComposite && ((LazyComposite< ? >) c).budget != null) {
+            return ((LazyComposite< ? >) c).budget;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * sets the batch loader of this composite and all nested lazy composites, which don't define an own batch loader.
+    *
+    * @param batchLoader the batch loader. might be null. Null means loading via {@link #initializeChildren()}.
+    */
+   public void setBatchLoader(LazyCompositeBatchLoader batchLoader) {
+      this.batchLoader = batchLoader;
+   }
+
+   /**
+    * gets the batch loader, which is either defined at this composite or inherited from the next lazy parent composite
+    * defining one.
+    *
+    * @return the batch loader or null, if none is defined.
+    */
+   public LazyCompositeBatchLoader getBatchLoader() {
+      for (Composite< ? > c = this; c != null; c = c.getParent()) {
+         if (c instanceof LazyComposite && ((LazyComposite< ? >) c).batchLoader != null) {
+            return ((LazyComposite< ? >) c).batchLoader;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * sets the load statistics collecting the loads of this composite and all nested lazy composites, which don't define
+    * own statistics.
+    *
+    * @param statistics the statistics. might be null. Null means no measurement.
+    */
+   public void setStatistics(LazyCompositeStatistics statistics) {
+      this.statistics = statistics;
+   }
+
+   /**
+    * gets the load statistics, which are either defined at this composite or inherited from the next lazy parent
+    * composite defining them.
+    *
+    * @return the statistics or null, if none are defined.
+    */
+   public LazyCompositeStatistics getStatistics() {
+      for (Composite< ? > c = this; c != null; c = c.getParent()) {
+         if (c instanceof LazyComposite && ((LazyComposite< ? >) c).statistics != null) {
+            return ((LazyComposite< ? >) c).statistics;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * {@inheritDoc} If a {@link #getBudget() budget} is defined, the returned list is a snapshot, since the children
+    * might be released at any time. The snapshot is shared by all calls until the children change. In paged mode the
+    * returned list is a read only view loading the pages on access.
+    */
    @Override
    public List<Composite< ? >> getChildren() {
-      ensureLoaded();
-      return super.getChildren();
+      int size = pageSize();
+      if (size > 0) {
+         return new PagedChildren(size);
+      }
+      if (ensureLoaded(true) == null) {
+         return super.getChildren();
+      }
+      while (true) {
+         List<Composite< ? >> children = snapshot();
+         if (children != null) {
+            return children;
+         }
+         ensureLoaded(true);
+      }
+   }
+
+   /**
+    * @return the cached snapshot of the loaded children or null, if the children are not loaded.
+    */
+   private List<Composite< ? >> snapshot() {
+      List<Composite< ? >> children = snapshot;
+      if (children != null) {
+         return children;
+      }
+      // the snapshot is taken under the read lock, so the children can't be released while copying
+      childAccessLock.readLock().lock();
+      try {
+         if (!loaded) {
+            return null;
+         }
+         children = snapshot;
+         if (children == null) {
+            children = Collections.unmodifiableList(new ArrayList<Composite< ? >>(getChildrenList()));
+            snapshot = children;
+         }
+         return children;
+      }
+      finally {
+         childAccessLock.readLock().unlock();
+      }
    }
 
+   @Override
+   protected void childAdded(Composite< ? > child) {
+      snapshot = null;
+      super.childAdded(child);
+   }
+
+   @Override
+   public void sortChildren(Comparator<Composite< ? >> comparator) {
+      childAccessLock.writeLock().lock();
+      try {
+         super.sortChildren(comparator);
+         snapshot = null;
+      }
+      finally {
+         childAccessLock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * {@inheritDoc} The children are not loaded, if the {@link #childCountHint()} is known. In paged mode only the first
+    * page is loaded.
+    */
    @Override
    public boolean hasChildren() {
-      ensureLoaded();
-      return super.hasChildren();
+      if (!loaded) {
+         int hint = childCountHint();
+         if (hint != UNKNOWN_CHILD_COUNT) {
+            return hint > 0;
+         }
+      }
+      if (isPaged()) {
+         return !getChildren(0, 1).isEmpty();
+      }
+      return loadedChildCount() > 0;
+   }
+
+   /**
+    * gets the exact number of children, which are loaded if necessary.
+    *
+    * In paged mode all pages are loaded once to find the last child, the count is kept until the paging changes.
+    *
+    * @return the number of children
+    * @see #getEstimatedChildCount()
+    */
+   public int getChildCount() {
+      int count = pagedChildCount();
+      return count != UNKNOWN_CHILD_COUNT ? count : loadedChildCount();
+   }
+
+   /**
+    * gets the number of children without loading them. While the children are not loaded, this is the
+    * {@link #childCountHint()}, which might be inexact.
+    *
+    * @return the number of loaded children, the hint or {@link #UNKNOWN_CHILD_COUNT}.
+    */
+   public int getEstimatedChildCount() {
+      childAccessLock.readLock().lock();
+      try {
+         if (loaded) {
+            return getChildrenList().size();
+         }
+      }
+      finally {
+         childAccessLock.readLock().unlock();
+      }
+      return childCountHint();
    }
 
-   private void ensureLoaded() {
+   private int loadedChildCount() {
+      while (true) {
+         ensureLoaded(true);
+         childAccessLock.readLock().lock();
+         try {
+            // the children might have been released by the budget in the meantime
+            if (loaded) {
+               return getChildrenList().size();
+            }
+         }
+         finally {
+            childAccessLock.readLock().unlock();
+         }
+      }
+   }
+
+   /**
+    * enables the paged loading mode used by {@link #getChildren(int, int)}. The children are loaded in windows of
+    * <i>pageSize</i> children via {@link #initializeChildren(int, int)} and at most <i>maxLoadedPages</i> pages are
+    * kept, releasing the least recently accessed page first. Changing the paging releases all loaded pages. Pages are
+    * bounded by <i>maxLoadedPages</i> only, they are not charged to the {@link #getBudget() budget}. In paged mode
+    * {@link #getChildren()} returns a view loading the pages on access.
+    *
+    * @param pageSize the number of children per page. 0 disables paging.
+    * @param maxLoadedPages the maximum number of pages kept loaded
+    */
+   public void setPaging(int pageSize, final int maxLoadedPages) {
+      if (pageSize < 0 || maxLoadedPages < 1) {
+         throw new IllegalArgumentException("pageSize must not be negative and maxLoadedPages must be positive");
+      }
       childAccessLock.writeLock().lock();
       try {
-         if (!loaded) {
-            initializeChildren();
-            loaded = true;
+         this.pageSize = pageSize;
+         this.pagedChildCount = UNKNOWN_CHILD_COUNT;
+         this.pages = pageSize == 0 ? null : new LinkedHashMap<Integer, List<Composite< ? >>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Composite< ? >>> eldest) {
+               return size() > maxLoadedPages;
+            }
+         };
+      }
+      finally {
+         childAccessLock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * gets a window of the children. In paged mode (see {@link #setPaging(int, int)}) only the pages covering the window
+    * are loaded, otherwise all children are loaded.
+    *
+    * @param offset index of the first child
+    * @param limit maximum number of children to return
+    * @return an unmodifiable list containing at most <i>limit</i> children. Empty, if <i>offset</i> is behind the last
+    *         child.
+    */
+   public List<Composite< ? >> getChildren(int offset, int limit) {
+      if (offset < 0 || limit < 0) {
+         throw new IndexOutOfBoundsException("offset and limit must not be negative");
+      }
+      long end = (long) offset + limit;
+      List<Composite< ? >> result = new ArrayList<Composite< ? >>();
+      childAccessLock.writeLock().lock();
+      try {
+         if (pageSize > 0) {
+            long pos = offset;
+            while (pos < end) {
+               int index = (int) (pos / pageSize);
+               long pageStart = (long) index * pageSize;
+               List<Composite< ? >> page = loadPage(index);
+               int from = (int) (pos - pageStart);
+               if (from >= page.size()) {
+                  break;
+               }
+               result.addAll(page.subList(from, (int) Math.min(page.size(), end - pageStart)));
+               if (page.size() < pageSize) {
+                  pagedChildCount = (int) pageStart + page.size();
+                  break;
+               }
+               pos = pageStart + pageSize;
+            }
+            return Collections.unmodifiableList(result);
+         }
+      }
+      finally {
+         childAccessLock.writeLock().unlock();
+      }
+      List<Composite< ? >> all = getChildren();
+      if (offset < all.size()) {
+         result.addAll(all.subList(offset, (int) Math.min(all.size(), end)));
+      }
+      return Collections.unmodifiableList(result);
+   }
+
+   private boolean isPaged() {
+      return pageSize() > 0;
+   }
+
+   private int pageSize() {
+      childAccessLock.readLock().lock();
+      try {
+         return pageSize;
+      }
+      finally {
+         childAccessLock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the number of children in paged mode, {@link #UNKNOWN_CHILD_COUNT} otherwise.
+    */
+   private int pagedChildCount() {
+      childAccessLock.writeLock().lock();
+      try {
+         if (pageSize > 0 && pagedChildCount == UNKNOWN_CHILD_COUNT) {
+            int index = 0;
+            List<Composite< ? >> page;
+            while ((page = loadPage(index)).size() == pageSize) {
+               index++;
+            }
+            pagedChildCount = index * pageSize + page.size();
+         }
+         return pagedChildCount;
+      }
+      finally {
+         childAccessLock.writeLock().unlock();
+      }
+   }
+
+   private List<Composite< ? >> loadPage(int index) {
+      Integer key = Integer.valueOf(index);
+      List<Composite< ? >> page = pages.get(key);
+      if (page == null) {
+         // children register themselves at the children list on creation, move them into the page
+         List<Composite< ? >> list = getChildrenList();
+         int before = list.size();
+         LazyCompositeStatistics s = getStatistics();
+         long start = s != null ? System.nanoTime() : 0;
+         try {
+            initializeChildren(index * pageSize, pageSize);
+         }
+         catch (RuntimeException e) {
+            if (s != null) {
+               s.failed(this);
+            }
+            throw e;
+         }
+         if (s != null) {
+            s.loaded(this, System.nanoTime() - start, list.size() - before, false);
+         }
+         List<Composite< ? >> created = list.subList(before, list.size());
+         page = new ArrayList<Composite< ? >>(created);
+         created.clear();
+         pages.put(key, page);
+      }
+      return page;
+   }
+
+   /**
+    * read only view of the children in paged mode, loading the pages on access. The iteration walks the children in
+    * windows of one page.
+    */
+   private final class PagedChildren extends AbstractList<Composite< ? >> {
+
+      private final int window;
+
+      PagedChildren(int window) {
+         this.window = window;
+      }
+
+      @Override
+      public Composite< ? > get(int index) {
+         if (index < 0) {
+            throw new IndexOutOfBoundsException("index: " + index);
+         }
+         List<Composite< ? >> children = getChildren(index, 1);
+         if (children.isEmpty()) {
+            throw new IndexOutOfBoundsException("index: " + index);
+         }
+         return children.get(0);
+      }
+
+      @Override
+      public int size() {
+         return getChildCount();
+      }
+
+      @Override
+      public Iterator<Composite< ? >> iterator() {
+         return new Iterator<Composite< ? >>() {
+
+            private List<Composite< ? >> children = Collections.emptyList();
+
+            private int offset;
+
+            private int next;
+
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+               if (next == children.size() && !last) {
+                  children = getChildren(offset, window);
+                  offset += children.size();
+                  next = 0;
+                  last = children.size() < window;
+               }
+               return next < children.size();
+            }
+
+            @Override
+            public Composite< ? > next() {
+               if (!hasNext()) {
+                  throw new NoSuchElementException();
+               }
+               return children.get(next++);
+            }
+
+            @Override
+            public void remove() {
+               throw new UnsupportedOperationException("read only iterator");
+            }
+         };
+      }
+   }
+
+   /**
+    * releases the loaded page with the given index, which will be reloaded on next access.
+    *
+    * @param index the page index
+    */
+   public void releasePage(int index) {
+      childAccessLock.writeLock().lock();
+      try {
+         if (pages != null) {
+            pages.remove(Integer.valueOf(index));
          }
       }
       finally {
@@ -56,10 +613,226 @@ public class LazyComposite<T> extends Composite<T> {
       }
    }
 
+   /**
+    * @return the number of currently loaded pages
+    */
+   public int getLoadedPageCount() {
+      childAccessLock.writeLock().lock();
+      try {
+         return pages != null ? pages.size() : 0;
+      }
+      finally {
+         childAccessLock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * gets the children without blocking the calling thread. The children are loaded using the {@link #getExecutor()
+    * executor}, if they are not loaded yet. Concurrent calls share the same pending load.
+    *
+    * @return the future children list. In paged mode the paged view of {@link #getChildren()}.
+    */
+   public Future<List<Composite< ? >>> getChildrenAsync() {
+      if (isPaged()) {
+         return done(getChildren());
+      }
+      return load(true);
+   }
+
+   /**
+    * determines, if the children of this composite have been loaded.
+    *
+    * @return
+    */
+   public boolean isLoaded() {
+      return loaded;
+   }
+
+   private Future<List<Composite< ? >>> load(final boolean prefetch) {
+      LoadTask task = null;
+      synchronized (this) {
+         if (!loaded) {
+            if (pendingLoad != null) {
+               return pendingLoad;
+            }
+            task = new LoadTask(new Callable<List<Composite< ? >>>() {
+
+               @Override
+               public List<Composite< ? >> call() throws Exception {
+                  try {
+                     ensureLoaded(prefetch);
+                     return getChildren();
+                  }
+                  finally {
+                     synchronized (LazyComposite.this) {
+                        pendingLoad = null;
+                     }
+                  }
+               }
+            });
+            pendingLoad = task;
+         }
+      }
+      if (task == null) {
+         // the same snapshot as getChildren(), if a budget is defined
+         return done(getChildren());
+      }
+      LazyCompositeBatchLoader l = getBatchLoader();
+      if (l != null) {
+         final LoadTask t = task;
+         l.submit(this, new LazyCompositeBatchLoader.IBatchCallback() {
+
+            @Override
+            public void loaded(Throwable failure) {
+               if (failure == null) {
+                  // the task just takes over the children, after the batch has loaded them
+                  t.run();
+               } else {
+                  synchronized (LazyComposite.this) {
+                     pendingLoad = null;
+                  }
+                  t.fail(failure);
+               }
+            }
+         });
+         return task;
+      }
+      Executor e = getExecutor();
+      if (e == null) {
+         task.run();
+         return task;
+      }
+      try {
+         e.execute(task);
+      }
+      catch (RuntimeException ex) {
+         synchronized (this) {
+            pendingLoad = null;
+         }
+         throw ex;
+      }
+      return task;
+   }
+
+   private static final class LoadTask extends FutureTask<List<Composite< ? >>> {
+
+      LoadTask(Callable<List<Composite< ? >>> callable) {
+         super(callable);
+      }
+
+      void fail(Throwable failure) {
+         setException(failure);
+      }
+   }
+
+   private static <V> Future<V> done(final V value) {
+      FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+
+         @Override
+         public V call() throws Exception {
+            return value;
+         }
+      });
+      task.run();
+      return task;
+   }
+
+   private LazyCompositeBudget ensureLoaded(boolean prefetch) {
+      LazyCompositeBudget b = getBudget();
+      if (loaded) {
+         if (b != null) {
+            b.accessed(this);
+         }
+         return b;
+      }
+      boolean initialized = false;
+      LazyCompositeStatistics s = getStatistics();
+      LazyCompositeBatchLoader l = getBatchLoader();
+      while (!initialized) {
+         // the batch is loaded without holding the lock, since its callbacks might take over this composite
+         Throwable failure = l != null ? l.load(this) : null;
+         if (s != null) {
+            s.waitBegin(this);
+         }
+         childAccessLock.writeLock().lock();
+         try {
+            if (s != null) {
+               s.waitEnd(this, loaded);
+            }
+            if (loaded) {
+               break;
+            }
+            long nanos;
+            try {
+               if (l == null) {
+                  long start = s != null ? System.nanoTime() : 0;
+                  initializeChildren();
+                  nanos = s != null ? System.nanoTime() - start : 0;
+               } else if (failure instanceof RuntimeException) {
+                  throw (RuntimeException) failure;
+               } else if (failure instanceof Error) {
+                  throw (Error) failure;
+               } else if ((nanos = l.loadTime(this)) < 0) {
+                  // taken over and released by another thread in the meantime
+                  continue;
+               }
+            }
+            catch (RuntimeException e) {
+               if (s != null) {
+                  s.failed(this);
+               }
+               throw e;
+            }
+            if (s != null) {
+               // a batch loaded composite records the time of its whole batch
+               s.loaded(this, nanos, getChildrenList().size(), released);
+            }
+            loaded = true;
+            initialized = true;
+            if (l != null) {
+               l.takenOver(this);
+            }
+         }
+         finally {
+            childAccessLock.writeLock().unlock();
+         }
+      }
+      if (initialized && b != null) {
+         b.loaded(this);
+      }
+      if (initialized && prefetch) {
+         prefetch();
+      }
+      return b;
+   }
+
+   private void prefetch() {
+      IPrefetchPolicy policy = getPrefetchPolicy();
+      if (policy == null || getExecutor() == null) {
+         return;
+      }
+      for (LazyComposite< ? > candidate : policy.getPrefetchCandidates(this)) {
+         if (!candidate.loaded && !candidate.isPaged()) {
+            // prefetched composites don't prefetch on their own, otherwise the whole tree would be loaded
+            candidate.load(false);
+         }
+      }
+   }
+
+   /**
+    * releases the loaded children, which will be reloaded on next access. Called by the {@link #getBudget() budget} to
+    * release least recently accessed subtrees.
+    */
    protected synchronized void releaseChilldren() {
       childAccessLock.writeLock().lock();
       try {
+         LazyCompositeBudget b = getBudget();
+         if (b != null) {
+            b.released(this);
+         }
          getChildrenList().clear();
+         snapshot = null;
+         released |= loaded;
          loaded = false;
       }
       finally {
@@ -68,16 +841,39 @@ public class LazyComposite<T> extends Composite<T> {
    }
 
    /**
-    * the hook method to initialize this composites children on first children access
+    * the hook method to initialize this composites children on first children access. Not called, if a
+    * {@link #getBatchLoader() batch loader} is defined.
     */
    protected void initializeChildren() {}
 
+   /**
+    * the hook method to initialize a window of this composites children in paged mode. Implementations create the
+    * children from <i>offset</i> to <i>offset + limit</i> with this composite as parent. Creating less than <i>limit</i>
+    * children marks the end of the children.
+    *
+    * @param offset index of the first child to create
+    * @param limit maximum number of children to create
+    * @see #setPaging(int, int)
+    */
+   protected void initializeChildren(int offset, int limit) {}
+
+   /**
+    * the hook method to determine the number of children without loading them, e.g. from a cheap count query or a
+    * "has children" flag of the backing store. Used by {@link #hasChildren()} and {@link #getEstimatedChildCount()}.
+    * Implementations not knowing the exact count but knowing that there are children may return any positive value.
+    *
+    * @return the number of children or {@link #UNKNOWN_CHILD_COUNT}, which is the default.
+    */
+   protected int childCountHint() {
+      return UNKNOWN_CHILD_COUNT;
+   }
+
    @Override
    public String toString() {
       StringBuilder b = new StringBuilder();
       b.append("Composite [ #children=");
       if (loaded) {
-         b.append(getChildren().size());
+         b.append(getChildrenList().size());
       } else {
          b.append("lazy: not initialized");
       }
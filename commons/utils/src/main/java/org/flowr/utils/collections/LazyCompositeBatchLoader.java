@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the children of many {@link LazyComposite} elements in one call instead of one
+ * {@link LazyComposite#initializeChildren()} call per composite. Composites requesting their children asynchronously
+ * via {@link LazyComposite#getChildrenAsync()} within the same batch window are queued into one batch, until the
+ * window has elapsed or the maximum batch size is reached. Queued composites don't occupy a thread. Usage
+ *
+ * <pre>
+ * root.setBatchLoader(new LazyCompositeBatchLoader(500, 5, TimeUnit.MILLISECONDS) {
+ *
+ *    protected void loadChildren(List&lt;LazyComposite&lt;?&gt;&gt; composites) {
+ *       for (Row row : store.queryChildren(ids(composites))) {
+ *          new RowComposite(find(composites, row.getParentId()), row);
+ *       }
+ *    }
+ * });
+ * </pre>
+ *
+ * The batch loader replaces {@link LazyComposite#initializeChildren()} for all composites it is responsible for. A
+ * synchronous children access doesn't wait for the window, it loads the current batch including its own composite
+ * immediately. A full batch is loaded by the {@link LazyComposite#getExecutor() executor} of its first composite or,
+ * if there is none, by the thread adding the last composite. A batch, which window has elapsed, is loaded by the
+ * executor of its first composite or by the scheduler thread.
+ *
+ * @author krausesv
+ */
+public abstract class LazyCompositeBatchLoader {
+
+   private static ScheduledExecutorService defaultScheduler;
+
+   private final int maxBatchSize;
+   private final long windowNanos;
+   private final ScheduledExecutorService scheduler;
+   private Batch current;
+   // the batch of every queued or loading composite and of every loaded composite, which has not taken over its
+   // children yet
+   private final Map<LazyComposite< ? >, Batch> queued = new IdentityHashMap<LazyComposite< ? >, Batch>();
+
+   /**
+    * receives the outcome of an asynchronous children request.
+    */
+   static interface IBatchCallback {
+
+      /**
+       * called after the batch containing the requesting composite has been loaded.
+       *
+       * @param failure the failure of the batch or null
+       */
+      void loaded(Throwable failure);
+   }
+
+   private static final class Batch {
+
+      private final List<LazyComposite< ? >> composites = new ArrayList<LazyComposite< ? >>();
+      private final List<IBatchCallback> callbacks = new ArrayList<IBatchCallback>();
+      private boolean dispatched;
+      private boolean done;
+      private Throwable failure;
+      private long nanos;
+   }
+
+   /**
+    * constructor using a shared daemon thread to close the batch windows.
+    *
+    * @param maxBatchSize the maximum number of composites loaded by one {@link #loadChildren(List)} call
+    * @param window the time to wait for further composites joining a batch
+    * @param unit the window time unit
+    */
+   public LazyCompositeBatchLoader(int maxBatchSize, long window, TimeUnit unit) {
+      this(maxBatchSize, window, unit, null);
+   }
+
+   /**
+    * constructor
+    *
+    * @param maxBatchSize the maximum number of composites loaded by one {@link #loadChildren(List)} call
+    * @param window the time to wait for further composites joining a batch
+    * @param unit the window time unit
+    * @param scheduler the scheduler closing the batch windows. might be null, which means using a shared daemon
+    *           thread.
+    */
+   public LazyCompositeBatchLoader(int maxBatchSize, long window, TimeUnit unit, ScheduledExecutorService scheduler) {
+      if (maxBatchSize < 1) {
+         throw new IllegalArgumentException("maxBatchSize must be positive");
+      }
+      this.maxBatchSize = maxBatchSize;
+      this.windowNanos = unit.toNanos(window);
+      this.scheduler = scheduler;
+   }
+
+   /**
+    * loads the children of all given composites, usually by creating the child composites with the corresponding
+    * composite as parent.
+    *
+    * @param composites the composites to load. Contains at most {@link #getMaxBatchSize()} elements.
+    */
+   protected abstract void loadChildren(List<LazyComposite< ? >> composites);
+
+   /**
+    * @return the maximum batch size
+    */
+   public int getMaxBatchSize() {
+      return maxBatchSize;
+   }
+
+   private static synchronized ScheduledExecutorService defaultScheduler() {
+      if (defaultScheduler == null) {
+         defaultScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "LazyCompositeBatchLoader");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      }
+      return defaultScheduler;
+   }
+
+   /**
+    * queues the given composite into the current batch without blocking. The callback is called after the batch has
+    * been loaded, immediately if the children of the composite are loaded already.
+    */
+   void submit(LazyComposite< ? > composite, IBatchCallback callback) {
+      Batch batch;
+      boolean dispatch = false;
+      boolean loaded;
+      synchronized (this) {
+         loaded = composite.isLoaded() || isLoaded(composite);
+         if (!loaded) {
+            batch = enqueue(composite);
+            batch.callbacks.add(callback);
+            dispatch = batch.composites.size() >= maxBatchSize && detach(batch);
+         } else {
+            batch = null;
+         }
+      }
+      if (loaded) {
+         callback.loaded(null);
+      } else if (dispatch) {
+         execute(batch);
+      }
+   }
+
+   /**
+    * loads the children of the given composite by loading the batch it is queued in, or a new batch, and blocks until
+    * the batch has been loaded. Has to be called without holding the composites lock, since the callbacks of the batch
+    * might be run by the calling thread. Returns immediately, if the children are loaded already.
+    *
+    * @return the failure of the batch or null
+    */
+   Throwable load(LazyComposite< ? > composite) {
+      Batch batch;
+      boolean dispatch;
+      synchronized (this) {
+         // a composite is taken over, before it is removed from the queue
+         if (composite.isLoaded() || isLoaded(composite)) {
+            return null;
+         }
+         batch = enqueue(composite);
+         dispatch = detach(batch);
+      }
+      if (dispatch) {
+         run(batch);
+         return batch.failure;
+      }
+      boolean interrupted = false;
+      synchronized (this) {
+         while (!batch.done) {
+            try {
+               wait();
+            }
+            catch (InterruptedException e) {
+               interrupted = true;
+            }
+         }
+      }
+      if (interrupted) {
+         Thread.currentThread().interrupt();
+      }
+      return batch.failure;
+   }
+
+   /**
+    * determines, if the children of the given composite have been loaded, but not taken over by the composite yet.
+    */
+   synchronized boolean isLoaded(LazyComposite< ? > composite) {
+      Batch batch = queued.get(composite);
+      return batch != null && batch.done;
+   }
+
+   /**
+    * gets the time spent loading the batch, which has loaded the children of the given composite. The children have
+    * not been taken over by the composite yet.
+    *
+    * @return the load time in nanoseconds or -1, if the children of the composite have not been loaded.
+    */
+   synchronized long loadTime(LazyComposite< ? > composite) {
+      Batch batch = queued.get(composite);
+      return batch != null && batch.done ? batch.nanos : -1;
+   }
+
+   /**
+    * removes the given composite from the queue after it has taken over its loaded children.
+    */
+   synchronized void takenOver(LazyComposite< ? > composite) {
+      queued.remove(composite);
+   }
+
+   private Batch enqueue(LazyComposite< ? > composite) {
+      Batch batch = queued.get(composite);
+      if (batch != null) {
+         return batch;
+      }
+      if (current == null) {
+         final Batch created = new Batch();
+         current = created;
+         ScheduledExecutorService s = scheduler != null ? scheduler : defaultScheduler();
+         s.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+               expired(created);
+            }
+         }, windowNanos, TimeUnit.NANOSECONDS);
+      }
+      batch = current;
+      batch.composites.add(composite);
+      queued.put(composite, batch);
+      return batch;
+   }
+
+   /**
+    * marks the given batch as dispatched, so no further composite joins it.
+    *
+    * @return true, if the batch has not been dispatched before.
+    */
+   private boolean detach(Batch batch) {
+      if (batch.dispatched) {
+         return false;
+      }
+      batch.dispatched = true;
+      if (current == batch) {
+         current = null;
+      }
+      return true;
+   }
+
+   private void expired(Batch batch) {
+      boolean dispatch;
+      synchronized (this) {
+         dispatch = detach(batch);
+      }
+      if (dispatch) {
+         execute(batch);
+      }
+   }
+
+   private void execute(final Batch batch) {
+      Executor executor = batch.composites.get(0).getExecutor();
+      if (executor != null) {
+         try {
+            executor.execute(new Runnable() {
+
+               @Override
+               public void run() {
+                  LazyCompositeBatchLoader.this.run(batch);
+               }
+            });
+            return;
+         }
+         catch (RejectedExecutionException e) {
+            // load in the current thread
+         }
+      }
+      run(batch);
+   }
+
+   private void run(Batch batch) {
+      Throwable failure = null;
+      long start = System.nanoTime();
+      try {
+         loadChildren(batch.composites);
+      }
+      catch (RuntimeException e) {
+         failure = e;
+      }
+      catch (Error e) {
+         failure = e;
+      }
+      long nanos = System.nanoTime() - start;
+      List<IBatchCallback> callbacks;
+      synchronized (this) {
+         batch.nanos = nanos;
+         batch.failure = failure;
+         batch.done = true;
+         if (failure != null) {
+            // nothing to take over, the next access loads again
+            for (LazyComposite< ? > composite : batch.composites) {
+               queued.remove(composite);
+            }
+         }
+         callbacks = new ArrayList<IBatchCallback>(batch.callbacks);
+         notifyAll();
+      }
+      for (IBatchCallback callback : callbacks) {
+         callback.loaded(failure);
+      }
+   }
+}
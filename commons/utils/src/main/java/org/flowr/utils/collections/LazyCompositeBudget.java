@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A memory budget shared by all {@link LazyComposite} elements of a tree. Each loaded composite is charged with its
+ * {@link #weigh(LazyComposite) weight}. If the total weight exceeds the budget limit, the least recently accessed
+ * loaded subtrees are released and will be reloaded transparently on next access. Usage
+ *
+ * <pre>
+ * LazyComposite&lt;File&gt; root = new FileComposite(null, dir);
+ * root.setBudget(new LazyCompositeBudget(10000));
+ * </pre>
+ *
+ * The default weight is the number of loaded children. Override {@link #weigh(LazyComposite)} to charge estimated
+ * bytes instead.
+ *
+ * @author krausesv
+ */
+public class LazyCompositeBudget {
+
+   /**
+    * the charge of a loaded composite. The entries form the tree of the loaded composites, so releasing a subtree
+    * doesn't need to read the children lists of other composites.
+    */
+   private static final class Entry {
+
+      private final LazyComposite< ? > composite;
+      private final Entry parent;
+      private long weight;
+      // the entries of the loaded composites, which nearest loaded ancestor is the owner of this entry
+      private final Set<Entry> children = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+      private boolean evicted;
+
+      Entry(LazyComposite< ? > composite, Entry parent) {
+         this.composite = composite;
+         this.parent = parent;
+      }
+   }
+
+   private final long limit;
+   private long weight;
+   private final LinkedHashMap<LazyComposite< ? >, Entry> loaded = new LinkedHashMap<LazyComposite< ? >, Entry>(16, 0.75f, true);
+
+   /**
+    * constructor
+    *
+    * @param limit the maximum total weight of all loaded composites sharing this budget.
+    */
+   public LazyCompositeBudget(long limit) {
+      if (limit < 0) {
+         throw new IllegalArgumentException("limit must not be negative");
+      }
+      this.limit = limit;
+   }
+
+   /**
+    * determines the weight the given, just loaded composite is charged with.
+    *
+    * @param composite the loaded composite
+    * @return the composites weight. Default is the number of its children.
+    */
+   protected long weigh(LazyComposite< ? > composite) {
+      return composite.getChildrenList().size();
+   }
+
+   /**
+    * @return the budget limit
+    */
+   public long getLimit() {
+      return limit;
+   }
+
+   /**
+    * @return the total weight of all currently loaded composites
+    */
+   public synchronized long getWeight() {
+      return weight;
+   }
+
+   /**
+    * @return the number of currently loaded composites charged to this budget
+    */
+   public synchronized int getLoadedCount() {
+      return loaded.size();
+   }
+
+   /**
+    * registers a just loaded composite and releases least recently accessed subtrees, if the budget is exceeded.
+    */
+   void loaded(LazyComposite< ? > composite) {
+      long w = weigh(composite);
+      List<LazyComposite< ? >> victims;
+      synchronized (this) {
+         touchPath(composite);
+         Entry entry = loaded.get(composite);
+         if (entry == null) {
+            entry = new Entry(composite, loadedAncestor(composite));
+            loaded.put(composite, entry);
+            if (entry.parent != null) {
+               entry.parent.children.add(entry);
+            }
+         }
+         weight += w - entry.weight;
+         entry.weight = w;
+         victims = evict(composite);
+      }
+      // release outside of the budget lock, since releasing needs the composites own lock
+      for (LazyComposite< ? > victim : victims) {
+         victim.releaseChilldren();
+      }
+   }
+
+   /**
+    * marks the given composite and its lazy parents as recently accessed.
+    */
+   synchronized void accessed(LazyComposite< ? > composite) {
+      if (loaded.containsKey(composite)) {
+         touchPath(composite);
+      }
+   }
+
+   /**
+    * unregisters the given composite and its loaded subtree.
+    */
+   synchronized void released(LazyComposite< ? > composite) {
+      unregister(composite);
+   }
+
+   private void touchPath(LazyComposite< ? > composite) {
+      // parents first, so that a parent is always older than its loaded children
+      for (Composite< ? > c : composite.getPath()) {
+         loaded.get(c);
+      }
+   }
+
+   private Entry loadedAncestor(LazyComposite< ? > composite) {
+      for (Composite< ? > c = composite.getParent(); c != null; c = c.getParent()) {
+         Entry entry = loaded.get(c);
+         if (entry != null) {
+            return entry;
+         }
+      }
+      return null;
+   }
+
+   private List<LazyComposite< ? >> evict(LazyComposite< ? > current) {
+      List<LazyComposite< ? >> victims = new ArrayList<LazyComposite< ? >>();
+      long remaining = weight;
+      // a single pass in access order, the subtrees of the victims are unregistered afterwards
+      for (Iterator<Map.Entry<LazyComposite< ? >, Entry>> it = loaded.entrySet().iterator(); remaining > limit
+         && it.hasNext();) {
+         Map.Entry<LazyComposite< ? >, Entry> candidate = it.next();
+         if (candidate.getValue().evicted || isAncestorOrSelf(candidate.getKey(), current)) {
+            continue;
+         }
+         victims.add(candidate.getKey());
+         remaining -= evict(candidate.getValue());
+      }
+      for (LazyComposite< ? > victim : victims) {
+         unregister(victim);
+      }
+      return victims;
+   }
+
+   /**
+    * marks the given entry and its subtree as evicted.
+    *
+    * @return the weight of the entries marked
+    */
+   private long evict(Entry entry) {
+      if (entry.evicted) {
+         return 0;
+      }
+      entry.evicted = true;
+      long result = entry.weight;
+      for (Entry child : entry.children) {
+         result += evict(child);
+      }
+      return result;
+   }
+
+   private static boolean isAncestorOrSelf(Composite< ? > candidate, Composite< ? > composite) {
+      for (Composite< ? > c = composite; c != null; c = c.getParent()) {
+         if (c == candidate) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private void unregister(LazyComposite< ? > composite) {
+      Entry entry = loaded.remove(composite);
+      if (entry == null) {
+         return;
+      }
+      if (entry.parent != null) {
+         entry.parent.children.remove(entry);
+      }
+      removeSubtree(entry);
+   }
+
+   private void removeSubtree(Entry entry) {
+      weight -= entry.weight;
+      for (Entry child : entry.children) {
+         loaded.remove(child.composite);
+         removeSubtree(child);
+      }
+   }
+
+   @Override
+   public synchronized String toString() {
+      return "LazyCompositeBudget [weight=" + weight + ", limit=" + limit + ", #loaded=" + loaded.size() + "]";
+   }
+}
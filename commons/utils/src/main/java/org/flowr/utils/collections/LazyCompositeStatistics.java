@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load statistics of all {@link LazyComposite} elements of a tree. The statistics are collected, if an instance is set
+ * at the trees root via {@link LazyComposite#setStatistics(LazyCompositeStatistics)}. Without statistics no
+ * measurement is done at all. Usage
+ *
+ * <pre>
+ * LazyCompositeStatistics statistics = new LazyCompositeStatistics(true);
+ * root.setStatistics(statistics);
+ * ...
+ * Metrics total = statistics.getMetrics();
+ * exporter.gauge(&quot;tree.loads&quot;, total.getLoads());
+ * for (Map.Entry&lt;Class&lt;?&gt;, Metrics&gt; e : statistics.getMetricsByClass().entrySet()) {
+ *    ...
+ * }
+ * </pre>
+ *
+ * @author krausesv
+ */
+public class LazyCompositeStatistics {
+
+   /**
+    * number of latency histogram buckets.
+    */
+   public static final int BUCKETS = 18;
+
+   /**
+    * The load counters and the load latency histogram. Bucket <i>i</i> counts loads taking less than 2<sup>i</sup>
+    * milliseconds, the last bucket counts all longer loads.
+    *
+    * @author krausesv
+    */
+   public static final class Metrics {
+
+      private final AtomicLong loads = new AtomicLong();
+      private final AtomicLong reloads = new AtomicLong();
+      private final AtomicLong failures = new AtomicLong();
+      private final AtomicLong loadedChildren = new AtomicLong();
+      private final AtomicLong totalNanos = new AtomicLong();
+      private final AtomicLong maxNanos = new AtomicLong();
+      private final AtomicLong waits = new AtomicLong();
+      private final AtomicInteger waiters = new AtomicInteger();
+      private final AtomicInteger maxWaiters = new AtomicInteger();
+      private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+      private Metrics() {}
+
+      void loaded(long nanos, int children, boolean reload) {
+         loads.incrementAndGet();
+         if (reload) {
+            reloads.incrementAndGet();
+         }
+         loadedChildren.addAndGet(children);
+         totalNanos.addAndGet(nanos);
+         long max = maxNanos.get();
+         while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+         }
+         histogram.incrementAndGet(bucket(nanos));
+      }
+
+      void failed() {
+         failures.incrementAndGet();
+      }
+
+      void waitBegin() {
+         int current = waiters.incrementAndGet();
+         int max = maxWaiters.get();
+         while (current > max && !maxWaiters.compareAndSet(max, current)) {
+            max = maxWaiters.get();
+         }
+      }
+
+      void waitEnd(boolean waited) {
+         waiters.decrementAndGet();
+         if (waited) {
+            waits.incrementAndGet();
+         }
+      }
+
+      private static int bucket(long nanos) {
+         long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+         int bucket = 0;
+         while (millis > 0 && bucket < BUCKETS - 1) {
+            millis >>= 1;
+            bucket++;
+         }
+         return bucket;
+      }
+
+      /**
+       * @return the number of loads
+       */
+      public long getLoads() {
+         return loads.get();
+      }
+
+      /**
+       * @return the number of loads of composites, which children have been released before
+       */
+      public long getReloads() {
+         return reloads.get();
+      }
+
+      /**
+       * @return the number of failed loads
+       */
+      public long getFailures() {
+         return failures.get();
+      }
+
+      /**
+       * @return the total number of loaded children
+       */
+      public long getLoadedChildren() {
+         return loadedChildren.get();
+      }
+
+      /**
+       * @return the total load time in milliseconds
+       */
+      public long getTotalTime() {
+         return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+      }
+
+      /**
+       * @return the maximum load time in milliseconds
+       */
+      public long getMaxTime() {
+         return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+      }
+
+      /**
+       * @return the average load time in milliseconds
+       */
+      public double getAverageTime() {
+         long count = loads.get();
+         return count == 0 ? 0 : totalNanos.get() / (count * 1000000d);
+      }
+
+      /**
+       * @return the number of accesses, which had to wait for a load running in another thread
+       */
+      public long getWaits() {
+         return waits.get();
+      }
+
+      /**
+       * @return the number of threads currently waiting for or running a load
+       */
+      public int getWaiters() {
+         return waiters.get();
+      }
+
+      /**
+       * @return the maximum number of threads concurrently waiting for or running a load
+       */
+      public int getMaxWaiters() {
+         return maxWaiters.get();
+      }
+
+      /**
+       * @return a copy of the load latency histogram
+       */
+      public long[] getHistogram() {
+         long[] result = new long[BUCKETS];
+         for (int i = 0; i < BUCKETS; i++) {
+            result[i] = histogram.get(i);
+         }
+         return result;
+      }
+
+      @Override
+      public String toString() {
+         return "Metrics [loads=" + getLoads() + ", reloads=" + getReloads() + ", failures=" + getFailures()
+            + ", loadedChildren=" + getLoadedChildren() + ", totalTime=" + getTotalTime() + ", maxTime=" + getMaxTime()
+            + ", waits=" + getWaits() + ", maxWaiters=" + getMaxWaiters() + "]";
+      }
+   }
+
+   private final boolean perClass;
+   private final Metrics total = new Metrics();
+   private final ConcurrentMap<Class< ? >, Metrics> byClass = new ConcurrentHashMap<Class< ? >, Metrics>();
+
+   /**
+    * constructor
+    *
+    * @param perClass collect metrics per composite class additionally to the tree total
+    */
+   public LazyCompositeStatistics(boolean perClass) {
+      this.perClass = perClass;
+   }
+
+   /**
+    * @return the metrics of all composites of the tree.
+    */
+   public Metrics getMetrics() {
+      return total;
+   }
+
+   /**
+    * gets the metrics of the given composite class.
+    *
+    * @param type the composite class
+    * @return the metrics or null, if no composite of this class has been loaded or the statistics are not collected
+    *         per class.
+    */
+   public Metrics getMetrics(Class< ? > type) {
+      return byClass.get(type);
+   }
+
+   /**
+    * @return an unmodifiable snapshot of the metrics per composite class. Empty, if the statistics are not collected per
+    *         class.
+    */
+   public Map<Class< ? >, Metrics> getMetricsByClass() {
+      return Collections.unmodifiableMap(new HashMap<Class< ? >, Metrics>(byClass));
+   }
+
+   private Metrics metrics(LazyComposite< ? > composite) {
+      if (!perClass) {
+         return null;
+      }
+      Class< ? > type = composite.getClass();
+      Metrics m = byClass.get(type);
+      if (m == null) {
+         m = new Metrics();
+         Metrics old = byClass.putIfAbsent(type, m);
+         if (old != null) {
+            m = old;
+         }
+      }
+      return m;
+   }
+
+   void loaded(LazyComposite< ? > composite, long nanos, int children, boolean reload) {
+      total.loaded(nanos, children, reload);
+      Metrics m = metrics(composite);
+      if (m != null) {
+         m.loaded(nanos, children, reload);
+      }
+   }
+
+   void failed(LazyComposite< ? > composite) {
+      total.failed();
+      Metrics m = metrics(composite);
+      if (m != null) {
+         m.failed();
+      }
+   }
+
+   void waitBegin(LazyComposite< ? > composite) {
+      total.waitBegin();
+      Metrics m = metrics(composite);
+      if (m != null) {
+         m.waitBegin();
+      }
+   }
+
+   void waitEnd(LazyComposite< ? > composite, boolean waited) {
+      total.waitEnd(waited);
+      Metrics m = metrics(composite);
+      if (m != null) {
+         m.waitEnd(waited);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "LazyCompositeStatistics [total=" + total + ", perClass=" + perClass + "]";
+   }
+}
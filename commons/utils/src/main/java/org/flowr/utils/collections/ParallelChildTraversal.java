@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2008 flowr.org - all rights reserved. This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License (EPL) v1.0. The EPL is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: flowr.org - initial API and implementation
+ ******************************************************************************/
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.flowr.utils.collections.ChildIterator.IAsyncChildProvider;
+import org.flowr.utils.collections.ChildIterator.IChildProvider;
+
+/**
+ * Parallel traversal of the elements provided by an {@link IChildProvider}. Every element is expanded by its own task
+ * on the given executor, so expensive {@link IChildProvider#getChildren(Object)} calls run concurrently. Any executor
+ * with more than one thread can be used, e.g. a fixed thread pool. Usage
+ *
+ * <pre>
+ * new ParallelChildTraversal&lt;File&gt;(provider, pool).traverse(roots, new IConsumer&lt;File&gt;() {
+ *
+ *    public void accept(File file) {
+ *       index.add(file);
+ *    }
+ * });
+ * </pre>
+ *
+ * @author krausesv
+ *
+ * @param <E> traversal element type
+ */
+public class ParallelChildTraversal<E> {
+
+   /**
+    * defines the ability to receive the traversed elements.
+    *
+    * @author krausesv
+    *
+    * @param <E>
+    */
+   public static interface IConsumer<E> {
+
+      /**
+       * receives a traversed element.
+       *
+       * @param element the element
+       */
+      void accept(E element);
+   }
+
+   private final IChildProvider<E> childrenProvider;
+   private final Executor executor;
+   private final int maxInFlight;
+
+   /**
+    * the default maximum number of pending children requests of {@link #traverseOrdered(Iterable, IConsumer)}.
+    */
+   public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+   /**
+    * constructor
+    *
+    * @param childrenProvider the children provider. Called concurrently, thus has to be thread safe.
+    * @param executor the executor running the expansion tasks
+    */
+   public ParallelChildTraversal(IChildProvider<E> childrenProvider, Executor executor) {
+      this(childrenProvider, executor, DEFAULT_MAX_IN_FLIGHT);
+   }
+
+   /**
+    * constructor
+    *
+    * @param childrenProvider the children provider. Called concurrently, thus has to be thread safe.
+    * @param executor the executor running the expansion tasks
+    * @param maxInFlight the maximum number of pending children requests of {@link #traverseOrdered(Iterable, IConsumer)}
+    */
+   public ParallelChildTraversal(IChildProvider<E> childrenProvider, Executor executor, int maxInFlight) {
+      if (childrenProvider == null || executor == null)
+         throw new NullPointerException("childrenProvider and executor may not be null");
+      if (maxInFlight < 1) {
+         throw new IllegalArgumentException("maxInFlight must be positive");
+      }
+      this.childrenProvider = childrenProvider;
+      this.executor = executor;
+      this.maxInFlight = maxInFlight;
+   }
+
+   /**
+    * @return the maximum number of pending children requests of {@link #traverseOrdered(Iterable, IConsumer)}
+    */
+   public int getMaxInFlight() {
+      return maxInFlight;
+   }
+
+   /**
+    * traverses the given root elements and all their direct and nested children in no particular order. The consumer is
+    * called concurrently from the executors threads. The method returns, when all elements have been consumed.
+    *
+    * @param roots the root elements
+    * @param consumer the element consumer. Has to be thread safe.
+    * @throws InterruptedException if the calling thread is interrupted while waiting for the traversal.
+    */
+   public void traverse(Iterable<E> roots, final IConsumer< ? super E> consumer) throws InterruptedException {
+      final AtomicInteger pending = new AtomicInteger(1);
+      final CountDownLatch done = new CountDownLatch(1);
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+      class Expansion implements Runnable {
+
+         private final E element;
+
+         Expansion(E element) {
+            this.element = element;
+         }
+
+         void submit() {
+            pending.incrementAndGet();
+            try {
+               executor.execute(this);
+            }
+            catch (RuntimeException e) {
+               finished(e);
+            }
+         }
+
+         @Override
+         public void run() {
+            Throwable t = null;
+            try {
+               consumer.accept(element);
+               if (failure.get() == null) {
+                  for (E child : childrenProvider.getChildren(element)) {
+                     new Expansion(child).submit();
+                  }
+               }
+            }
+            catch (Throwable e) {
+               t = e;
+            }
+            finished(t);
+         }
+
+         private void finished(Throwable t) {
+            if (t != null) {
+               failure.compareAndSet(null, t);
+            }
+            if (pending.decrementAndGet() == 0) {
+               done.countDown();
+            }
+         }
+      }
+
+      for (E root : roots) {
+         new Expansion(root).submit();
+      }
+      // release the callers own token after all roots have been submitted
+      if (pending.decrementAndGet() == 0) {
+         done.countDown();
+      }
+      done.await();
+      rethrow(failure.get());
+   }
+
+   /**
+    * traverses the given root elements and all their direct and nested children in the same depth first pre-order as
+    * {@link ChildIterator}. The children of the upcoming elements are determined in parallel, at most
+    * {@link #getMaxInFlight()} at a time, while the consumer is called from the calling thread in order. Pending
+    * children requests are cancelled, if the traversal ends early.
+    *
+    * @param roots the root elements
+    * @param consumer the element consumer
+    * @throws InterruptedException if the calling thread is interrupted while waiting for children. The interrupt status
+    *            of the thread stays set.
+    */
+   public void traverseOrdered(Iterable<E> roots, IConsumer< ? super E> consumer) throws InterruptedException {
+      final Set<Future< ? >> pending = Collections.synchronizedSet(new HashSet<Future< ? >>());
+      IAsyncChildProvider<E> provider = new IAsyncChildProvider<E>() {
+
+         @Override
+         public Future<Iterable<E>> getChildrenAsync(final E container) {
+            FutureTask<Iterable<E>> task = new FutureTask<Iterable<E>>(new Callable<Iterable<E>>() {
+
+               @Override
+               public Iterable<E> call() throws Exception {
+                  return childrenProvider.getChildren(container);
+               }
+            }) {
+
+               @Override
+               protected void done() {
+                  pending.remove(this);
+               }
+            };
+            pending.add(task);
+            executor.execute(task);
+            return task;
+         }
+      };
+      try {
+         for (Iterator<E> it = new AsyncChildIterator<E>(provider, roots, maxInFlight); it.hasNext();) {
+            consumer.accept(it.next());
+         }
+      }
+      catch (IllegalStateException e) {
+         // the iterator sets the interrupt status again, if it is interrupted while waiting for children
+         if (Thread.currentThread().isInterrupted()) {
+            InterruptedException interrupted = new InterruptedException("interrupted while waiting for children");
+            interrupted.initCause(e);
+            throw interrupted;
+         }
+         throw e;
+      }
+      finally {
+         synchronized (pending) {
+            for (Future< ? > future : new ArrayList<Future< ? >>(pending)) {
+               future.cancel(true);
+            }
+         }
+      }
+   }
+
+   private static void rethrow(Throwable t) {
+      if (t == null) {
+         return;
+      }
+      if (t instanceof RuntimeException) {
+         throw (RuntimeException) t;
+      }
+      if (t instanceof Error) {
+         throw (Error) t;
+      }
+      throw new IllegalStateException(t);
+   }
+}
@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author skrause
+ *
+ */
+public class AsyncChildIteratorTest {
+
+	@Test
+	public void testIterationOrder() throws Exception {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		ChildIterator.IChildProvider<Integer> provider = new ChildIterator.IChildProvider<Integer>() {
+
+			@Override
+			public Iterable<Integer> getChildren(Integer container) {
+				int current = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(current, maxRunning.get()));
+				}
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				List<Integer> children = new ArrayList<Integer>();
+				if (container < 100) {
+					for (int i = 0; i < 3; i++) {
+						children.add(container * 3 + i);
+					}
+				}
+				return children;
+			}
+		};
+		List<Integer> expected = new ArrayList<Integer>();
+		for (Iterator<Integer> it = ChildIterator.createIterator(provider, 1, 2); it.hasNext();) {
+			expected.add(it.next());
+		}
+		maxRunning.set(0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			AsyncChildIterator<Integer> it = new AsyncChildIterator<Integer>(ChildIterator.asyncProvider(provider,
+					executor), Arrays.asList(1, 2), 4);
+			List<Integer> result = new ArrayList<Integer>();
+			while (it.hasNext()) {
+				Assert.assertTrue(it.getInFlight() <= 4);
+				result.add(it.next());
+			}
+			Assert.assertEquals(expected, result);
+			Assert.assertTrue(maxRunning.get() > 1);
+			Assert.assertTrue(maxRunning.get() <= 4);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConsumedNodesAreDropped() throws Exception {
+		// a chain of 10000 elements, each one having a single child
+		ChildIterator.IChildProvider<Integer> chain = new ChildIterator.IChildProvider<Integer>() {
+
+			@Override
+			public Iterable<Integer> getChildren(Integer container) {
+				return container < 10000 ? Arrays.asList(container + 1) : new ArrayList<Integer>();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int maxInFlight : new int[] { 0, 2 }) {
+				AsyncChildIterator<Integer> it = new AsyncChildIterator<Integer>(ChildIterator.asyncProvider(chain,
+						executor), Arrays.asList(1), maxInFlight);
+				int count = 0;
+				while (it.hasNext()) {
+					Assert.assertEquals(++count, it.next().intValue());
+					Assert.assertTrue(it.getFrontierSize() <= 1);
+				}
+				Assert.assertEquals(10000, count);
+				Assert.assertEquals(0, it.getFrontierSize());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxInFlight() throws Exception {
+		new AsyncChildIterator<Integer>(null, Arrays.asList(1), -1);
+	}
+}
@@ -4,9 +4,15 @@
 package org.flowr.utils.collections;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import org.flowr.utils.IFilter;
+import org.flowr.utils.ITransformer;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -50,4 +56,146 @@ public class ChildIteratorTest {
 		Assert.assertTrue("to less children returned " + expected.toString(), expected.isEmpty());
 		
 	}
+
+	@Test
+	public void testPreOrder() throws Exception {
+		Iterator<Integer> it = ChildIterator.createIterator(new ChildIterator.IChildProvider<Integer>() {
+
+			@Override
+			public Iterable<Integer> getChildren(Integer container) {
+				if (container < 10) {
+					return Arrays.asList(container * 10 + 1, container * 10 + 2);
+				}
+				return Collections.emptyList();
+			}
+		}, 1, 2);
+		List<Integer> result = new ArrayList<Integer>();
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		Assert.assertEquals(Arrays.asList(1, 11, 12, 2, 21, 22), result);
+	}
+
+	@Test
+	public void testDeepHierarchy() throws Exception {
+		final int depth = 100000;
+		Iterator<Integer> it = ChildIterator.createIterator(new ChildIterator.IChildProvider<Integer>() {
+
+			@Override
+			public Iterable<Integer> getChildren(Integer container) {
+				if (container < depth) {
+					return Collections.singletonList(container + 1);
+				}
+				return Collections.emptyList();
+			}
+		}, 1);
+		int count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		Assert.assertEquals(depth, count);
+	}
+
+	@Test
+	public void testVisitTracker() throws Exception {
+		// diamond 1 -> (2, 3) -> 4 and cycle 4 -> 1
+		final Map<Integer, List<Integer>> graph = new HashMap<Integer, List<Integer>>();
+		graph.put(1, Arrays.asList(2, 3));
+		graph.put(2, Arrays.asList(4));
+		graph.put(3, Arrays.asList(4));
+		graph.put(4, Arrays.asList(1));
+		ChildIterator.IChildProvider<Integer> provider = new ChildIterator.IChildProvider<Integer>() {
+
+			@Override
+			public Iterable<Integer> getChildren(Integer container) {
+				return graph.get(container);
+			}
+		};
+		ITransformer<Integer, Integer> id = new TransformerAdapter<Integer, Integer>(Integer.class, Integer.class) {
+
+			@Override
+			public Integer transform(Integer from) {
+				return from;
+			}
+		};
+		List<ChildIterator.IVisitTracker<Integer>> trackers = new ArrayList<ChildIterator.IVisitTracker<Integer>>();
+		trackers.add(ChildIterator.<Integer> identityTracker());
+		trackers.add(ChildIterator.keyTracker(id));
+		trackers.add(ChildIterator.bitSetTracker(id));
+		for (ChildIterator.IVisitTracker<Integer> tracker : trackers) {
+			Iterator<Integer> it = ChildIterator.createIterator(provider, tracker, 1);
+			List<Integer> result = new ArrayList<Integer>();
+			while (it.hasNext()) {
+				result.add(it.next());
+			}
+			Assert.assertEquals(Arrays.asList(1, 2, 4, 3), result);
+		}
+	}
+
+	private static final ChildIterator.IChildProvider<Integer> BINARY = new ChildIterator.IChildProvider<Integer>() {
+
+		@Override
+		public Iterable<Integer> getChildren(Integer container) {
+			return Arrays.asList(container * 2, container * 2 + 1);
+		}
+	};
+
+	private static List<Integer> toList(Iterator<Integer> it) {
+		List<Integer> result = new ArrayList<Integer>();
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		return result;
+	}
+
+	@Test
+	public void testBreadthFirstWithMaxDepth() throws Exception {
+		ChildIterator<Integer> it = new ChildIterator<Integer>(BINARY, Arrays.asList(1)).setOrder(
+				ChildIterator.Order.BreadthFirst).setMaxDepth(2);
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7), toList(it));
+	}
+
+	@Test
+	public void testPruneFilter() throws Exception {
+		final List<Integer> expanded = new ArrayList<Integer>();
+		ChildIterator<Integer> it = new ChildIterator<Integer>(new ChildIterator.IChildProvider<Integer>() {
+
+			@Override
+			public Iterable<Integer> getChildren(Integer container) {
+				expanded.add(container);
+				return BINARY.getChildren(container);
+			}
+		}, Arrays.asList(1)).setMaxDepth(2).setPruneFilter(new IFilter<Integer>() {
+
+			@Override
+			public boolean accept(Integer object) {
+				return object == 2;
+			}
+		});
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 6, 7), toList(it));
+		Assert.assertEquals(Arrays.asList(1, 3), expanded);
+	}
+
+	@Test
+	public void testNullElementsWithLevelAndParent() throws Exception {
+		ChildIterator<Integer> it = new ChildIterator<Integer>(new ChildIterator.IChildProvider<Integer>() {
+
+			@Override
+			public Iterable<Integer> getChildren(Integer container) {
+				if (container != null && container < 10) {
+					return Arrays.asList(null, container * 10);
+				}
+				return Collections.emptyList();
+			}
+		}, Arrays.asList(1, null, 2));
+		List<String> result = new ArrayList<String>();
+		Assert.assertEquals(-1, it.level());
+		while (it.hasNext()) {
+			Integer element = it.next();
+			result.add(element + "@" + it.level() + "<" + it.parent());
+		}
+		Assert.assertEquals(Arrays.asList("1@0<null", "null@1<1", "10@1<1", "null@0<null", "2@0<null", "null@1<2",
+				"20@1<2"), result);
+	}
 }
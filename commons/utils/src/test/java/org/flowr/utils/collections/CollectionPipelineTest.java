@@ -0,0 +1,106 @@
+/**
+ *
+ */
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.flowr.utils.IFilter;
+import org.flowr.utils.ITransformer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author skrause
+ *
+ */
+public class CollectionPipelineTest {
+
+	private static final IFilter<Integer> EVEN = new IFilter<Integer>() {
+
+		@Override
+		public boolean accept(Integer value) {
+			return value % 2 == 0;
+		}
+	};
+
+	private static final ITransformer<Integer, String> TO_STRING = new TransformerAdapter<Integer, String>(
+			Integer.class, String.class) {
+
+		@Override
+		public String transform(Integer from) {
+			return from % 10 == 0 ? null : String.valueOf(from);
+		}
+	};
+
+	private static final CollectionUtils.GroupCriteria<Integer, String> LENGTH = new CollectionUtils.GroupCriteria<Integer, String>() {
+
+		@Override
+		public Integer[] getGroups(String value) {
+			return value.endsWith("2") ? new Integer[] { value.length(), 0 } : new Integer[] { value.length() };
+		}
+	};
+
+	private static List<Integer> numbers(int count) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			result.add((i * 7919) % 20011);
+		}
+		return result;
+	}
+
+	@Test
+	public void testToList() throws Exception {
+		List<Integer> data = numbers(20000);
+		List<String> expected = CollectionUtils.transform(CollectionUtils.filter(data, EVEN), TO_STRING, true);
+		CollectionPipeline<Integer, String> pipeline = CollectionPipeline.from(data).filter(EVEN).transform(TO_STRING,
+				true);
+		Assert.assertEquals(expected, pipeline.toList());
+		Assert.assertEquals(expected, CollectionPipeline.from(new LinkedList<Integer>(data)).filter(EVEN).transform(
+				TO_STRING, true).toList());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Assert.assertEquals(expected, pipeline.parallel(executor, 1000).toList());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testGroupByKey() throws Exception {
+		List<Integer> data = numbers(20000);
+		List<String> strings = CollectionUtils.transform(CollectionUtils.filter(data, EVEN), TO_STRING, true);
+		Comparator<String> reverse = Collections.reverseOrder();
+		Map<Integer, List<String>> expected = CollectionUtils.groupByKey(strings, LENGTH, reverse, null);
+		CollectionPipeline<Integer, String> pipeline = CollectionPipeline.from(data).filter(EVEN).transform(TO_STRING,
+				true);
+		Assert.assertEquals(expected, pipeline.groupByKey(LENGTH, reverse, null));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Assert.assertEquals(expected, pipeline.parallel(executor, 1000).groupByKey(LENGTH, reverse, null));
+		} finally {
+			executor.shutdown();
+		}
+		Map<Integer, Integer> counts = pipeline.groupByKey(LENGTH, CollectionUtils.<String> countAggregator(), null);
+		Assert.assertEquals(expected.keySet(), counts.keySet());
+		for (Integer key : expected.keySet()) {
+			Assert.assertEquals(expected.get(key).size(), counts.get(key).intValue());
+		}
+	}
+
+	@Test
+	public void testImmutable() throws Exception {
+		CollectionPipeline<Integer, Integer> all = CollectionPipeline.from(Arrays.asList(1, 2, 3, 4));
+		CollectionPipeline<Integer, Integer> even = all.filter(EVEN);
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 4), all.toList());
+		Assert.assertEquals(Arrays.asList(2, 4), even.toList());
+	}
+}
@@ -1,17 +1,29 @@
 package org.flowr.utils.collections;
 
+import java.lang.annotation.ElementType;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.flowr.utils.IFilter;
+import org.flowr.utils.ITransformer;
 import org.flowr.utils.Operators;
 import org.flowr.utils.collections.CollectionUtils.IContainerHandler;
 import org.junit.Assert;
@@ -33,6 +45,195 @@ public class CollectionUtilsTest {
         System.out.println(CollectionUtils.filter(data, new F()));
     }
     
+    @Test
+    public void identityComparatorCollision() {
+        // find two distinct objects with the same identity hash code
+        Map<Integer, Object> byHash = new HashMap<Integer, Object>();
+        Object o1 = null;
+        Object o2 = null;
+        while (o1 == null) {
+            Object o = new Object();
+            Object previous = byHash.put(System.identityHashCode(o), o);
+            if (previous != null) {
+                o1 = previous;
+                o2 = o;
+            }
+        }
+        Comparator<Object> comparator = CollectionUtils.identityComparator();
+        Assert.assertEquals(0, comparator.compare(o1, o2));
+
+        // the identity set based results keep both
+        Set<Object> source = CollectionUtils.newIdentitySet(2);
+        source.add(o1);
+        source.add(o2);
+        IFilter<Object> all = new IFilter<Object>() {
+
+            @Override
+            public boolean accept(Object object) {
+                return true;
+            }
+        };
+        Assert.assertEquals(2, CollectionUtils.filter(source, all).size());
+        Assert.assertEquals(2, CollectionUtils.merge(all, source).size());
+        Assert.assertEquals(2, CollectionUtils.remove(source, all).size());
+    }
+
+    @Test
+    public void identityComparatorOrder() {
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 10000; i++) {
+            objects.add(new Object());
+        }
+        Comparator<Object> comparator = CollectionUtils.identityComparator();
+        Collections.sort(objects, comparator);
+        for (int i = 1; i < objects.size(); i++) {
+            Object previous = objects.get(i - 1);
+            Object current = objects.get(i);
+            // ordered by identity hash code and antisymmetric, the hash codes are not subtracted, which might overflow
+            Assert.assertTrue(System.identityHashCode(previous) <= System.identityHashCode(current));
+            Assert.assertEquals(-Integer.signum(comparator.compare(previous, current)),
+                    Integer.signum(comparator.compare(current, previous)));
+        }
+    }
+
+    @Test
+    public void identitySetsKeepAllElements() {
+        // equal, but distinct instances
+        String a1 = new String("a");
+        String a2 = new String("a");
+        String a3 = new String("a");
+        Set<String> source = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        source.addAll(Arrays.asList(a1, a2, a3));
+        IFilter<String> all = new IFilter<String>() {
+
+            @Override
+            public boolean accept(String s) {
+                return true;
+            }
+        };
+        Set<String> filtered = CollectionUtils.filter(source, all);
+        Assert.assertEquals(3, filtered.size());
+
+        Set<String> merged = CollectionUtils.merge(all, new HashSet<String>(Arrays.asList(a1)), new HashSet<String>(
+                Arrays.asList(a2)));
+        Assert.assertEquals(2, merged.size());
+        Assert.assertTrue(merged.contains(a1));
+        Assert.assertTrue(merged.contains(a2));
+        Assert.assertFalse(merged.contains(a3));
+
+        Set<String> removed = CollectionUtils.remove(source, all);
+        Assert.assertEquals(3, removed.size());
+        Assert.assertTrue(source.isEmpty());
+    }
+
+    @Test
+    public void filteredAndTransformedViews() {
+        List<String> data = new ArrayList<String>(Arrays.asList("Auto", "Baum", "Apfel"));
+        IFilter<String> startsWithA = new IFilter<String>() {
+
+            @Override
+            public boolean accept(String s) {
+                return s.startsWith("A");
+            }
+        };
+        ITransformer<String, Integer> length = new TransformerAdapter<String, Integer>(String.class, Integer.class) {
+
+            @Override
+            public Integer transform(String from) {
+                return from.startsWith("B") ? null : from.length();
+            }
+        };
+        Iterable<String> filtered = CollectionUtils.filteredView(data, startsWithA);
+        Iterable<Integer> transformed = CollectionUtils.transformedView(data, length, true);
+        List<Integer> transformedList = CollectionUtils.transformedView(data, length);
+        // views are live
+        data.add("Ast");
+        List<String> filteredResult = new ArrayList<String>();
+        for (String s : filtered) {
+            filteredResult.add(s);
+        }
+        Assert.assertEquals(Arrays.asList("Auto", "Apfel", "Ast"), filteredResult);
+        List<Integer> transformedResult = new ArrayList<Integer>();
+        for (Integer i : transformed) {
+            transformedResult.add(i);
+        }
+        Assert.assertEquals(Arrays.asList(4, 5, 3), transformedResult);
+        Assert.assertEquals(Arrays.asList(4, null, 5, 3), transformedList);
+    }
+
+    @Test
+    public void parallelFilterAndTransform() throws Exception {
+        List<Integer> data = new ArrayList<Integer>();
+        for (int i = 0; i < 100000; i++) {
+            data.add(i);
+        }
+        IFilter<Integer> even = new IFilter<Integer>() {
+
+            @Override
+            public boolean accept(Integer i) {
+                return i % 2 == 0;
+            }
+        };
+        ITransformer<Integer, String> toString = new TransformerAdapter<Integer, String>(Integer.class, String.class) {
+
+            @Override
+            public String transform(Integer from) {
+                return from % 3 == 0 ? null : from.toString();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertEquals(CollectionUtils.filter(data, even), CollectionUtils.parallelFilter(data, even, executor,
+                    1000));
+            Assert.assertEquals(CollectionUtils.transform(data, toString, true), CollectionUtils.parallelTransform(data,
+                    toString, true, executor, 1000));
+            Assert.assertEquals(CollectionUtils.transform(data, toString, false), CollectionUtils.parallelTransform(data,
+                    toString, false, executor, 1000));
+            // below the threshold
+            List<Integer> small = data.subList(0, 10);
+            Assert.assertEquals(CollectionUtils.filter(small, even), CollectionUtils.parallelFilter(small, even,
+                    executor, 1000));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void getAllWithPrefixRange() {
+        Map<String, Integer> hash = new HashMap<String, Integer>();
+        String[] keys = { "a", "a-b", "a.b", "a.b.c", "ab", "a.", "b.a", "a\uffff", "a.\uffff" };
+        for (int i = 0; i < keys.length; i++) {
+            hash.put(keys[i], i);
+        }
+        TreeMap<String, Integer> tree = new TreeMap<String, Integer>(hash);
+        TreeMap<String, Integer> sortedScan = new TreeMap<String, Integer>(Collections.reverseOrder());
+        sortedScan.putAll(hash);
+        for (String lead : new String[] { "a", "a.b", "", "x" }) {
+            for (String separator : new String[] { ".", "" }) {
+                Set<String> expected = new TreeSet<String>();
+                for (Map.Entry<String, Integer> e : CollectionUtils.getAll(hash, lead, separator)) {
+                    expected.add(e.getKey());
+                }
+                List<String> actual = new ArrayList<String>();
+                for (Map.Entry<String, Integer> e : CollectionUtils.getAll(tree, lead, separator)) {
+                    actual.add(e.getKey());
+                }
+                Assert.assertEquals(new ArrayList<String>(expected), actual);
+                Assert.assertEquals(expected.size(), CollectionUtils.getAll(sortedScan, lead, separator).size());
+            }
+        }
+        Assert.assertEquals(Arrays.asList("a", "a.", "a.b", "a.b.c", "a.\uffff"), keys(CollectionUtils.getAll(tree,
+                "a", ".")));
+    }
+
+    private static List<String> keys(List<Map.Entry<String, Integer>> entries) {
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<String, Integer> e : entries) {
+            result.add(e.getKey());
+        }
+        return result;
+    }
+
     @Test
     public void testTreeMapNullKey() {
         Map<String, String> map = new TreeMap<String, String>(new Comparator<String>() {
@@ -91,6 +292,399 @@ public class CollectionUtilsTest {
         }
     }
     
+    @Test
+    public void groupByKeyWithAggregator() {
+        List<String> data = Arrays.asList("Auto", "Apfel", "Baum", "Boot", "Brücke", "Dutzend", "Ast");
+        CollectionUtils.GroupCriteria<Character, String> firstLetter = new CollectionUtils.GroupCriteria<Character, String>() {
+
+            @Override
+            public Character[] getGroups(String value) {
+                return new Character[] { value.charAt(0) };
+            }
+        };
+        ITransformer<String, Integer> length = new TransformerAdapter<String, Integer>(String.class, Integer.class) {
+
+            @Override
+            public Integer transform(String from) {
+                return from.length();
+            }
+        };
+        Comparator<String> byLength = new Comparator<String>() {
+
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.length() - o2.length();
+            }
+        };
+
+        Map<Character, Integer> counts = CollectionUtils.groupByKey(data, firstLetter, CollectionUtils
+                .<String> countAggregator(), null);
+        Assert.assertEquals(Integer.valueOf(3), counts.get('A'));
+        Assert.assertEquals(Integer.valueOf(3), counts.get('B'));
+        Assert.assertEquals(Integer.valueOf(1), counts.get('D'));
+
+        Map<Character, Long> sums = CollectionUtils.groupByKey(data, firstLetter, CollectionUtils.sumAggregator(length),
+                null);
+        Assert.assertEquals(Long.valueOf(12), sums.get('A'));
+
+        Map<Character, String> min = CollectionUtils.groupByKey(data, firstLetter, CollectionUtils.minAggregator(byLength),
+                null);
+        Assert.assertEquals("Ast", min.get('A'));
+        Assert.assertEquals("Baum", min.get('B'));
+        Map<Character, String> max = CollectionUtils.groupByKey(data, firstLetter, CollectionUtils.maxAggregator(byLength),
+                null);
+        Assert.assertEquals("Brücke", max.get('B'));
+
+        Map<Character, List<String>> top = CollectionUtils.groupByKey(data, firstLetter, CollectionUtils.topAggregator(2,
+                byLength), new Comparator<Character>() {
+
+            @Override
+            public int compare(Character o1, Character o2) {
+                return o1.charValue() - o2.charValue();
+            }
+        });
+        Assert.assertEquals(Arrays.asList('A', 'B', 'D'), new ArrayList<Character>(top.keySet()));
+        Assert.assertEquals(Arrays.asList("Ast", "Auto"), top.get('A'));
+        Assert.assertEquals(Arrays.asList("Baum", "Boot"), top.get('B'));
+        Assert.assertEquals(Arrays.asList("Dutzend"), top.get('D'));
+    }
+
+    @Test
+    public void topAggregatorKeepsEncounterOrder() {
+        List<Integer> data = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            data.add((i * 7919) % 10007);
+        }
+        CollectionUtils.GroupCriteria<Integer, Integer> criteria = new CollectionUtils.GroupCriteria<Integer, Integer>() {
+
+            @Override
+            public Integer[] getGroups(Integer value) {
+                return new Integer[] { value % 3 };
+            }
+        };
+        // many equal values per group
+        Comparator<Integer> byHundreds = new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return o1 / 100 - o2 / 100;
+            }
+        };
+        Map<Integer, List<Integer>> top = CollectionUtils.groupByKey(data, criteria, 50, byHundreds, null);
+        Map<Integer, List<Integer>> groups = CollectionUtils.groupByKey(data, criteria);
+        Assert.assertEquals(groups.keySet(), top.keySet());
+        for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+            // the stable sort keeps equal values in encounter order
+            List<Integer> expected = new ArrayList<Integer>(group.getValue());
+            Collections.sort(expected, byHundreds);
+            expected = expected.subList(0, 50);
+            Assert.assertEquals(expected, top.get(group.getKey()));
+        }
+        try {
+            top.get(0).add(1);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void parallelGroupByKey() throws Exception {
+        List<Integer> data = new ArrayList<Integer>();
+        for (int i = 0; i < 100000; i++) {
+            data.add((i * 7919) % 100003);
+        }
+        CollectionUtils.GroupCriteria<Integer, Integer> criteria = new CollectionUtils.GroupCriteria<Integer, Integer>() {
+
+            @Override
+            public Integer[] getGroups(Integer value) {
+                return value % 3 == 0 ? new Integer[] { value % 10, -1 } : new Integer[] { value % 10 };
+            }
+        };
+        Comparator<Integer> reverse = Collections.reverseOrder();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Map<Integer, List<Integer>> expected = CollectionUtils.groupByKey(data, criteria, reverse, null);
+            Map<Integer, List<Integer>> actual = CollectionUtils.parallelGroupByKey(data, criteria, reverse, null,
+                    executor, 1000);
+            Assert.assertEquals(expected, actual);
+            Map<Integer, List<Integer>> unsorted = CollectionUtils.parallelGroupByKey(data, criteria, null, reverse,
+                    executor, 1000);
+            Assert.assertEquals(CollectionUtils.groupByKey(data, criteria), unsorted);
+            Assert.assertEquals(Integer.valueOf(9), unsorted.keySet().iterator().next());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void sortEnums() {
+        List<TimeUnit> units = new ArrayList<TimeUnit>();
+        for (int i = 0; i < 1000; i++) {
+            units.add(TimeUnit.values()[(i * 5) % TimeUnit.values().length]);
+        }
+        List<TimeUnit> expected = new ArrayList<TimeUnit>(units);
+        Collections.sort(expected);
+        Assert.assertEquals(expected, CollectionUtils.sort(units));
+
+        List<Enum> mixed = new ArrayList<Enum>(Arrays.<Enum> asList(TimeUnit.DAYS, ElementType.FIELD, TimeUnit.SECONDS,
+                ElementType.TYPE));
+        Assert.assertEquals(Arrays.<Enum> asList(ElementType.TYPE, ElementType.FIELD, TimeUnit.SECONDS, TimeUnit.DAYS),
+                CollectionUtils.sort(mixed));
+    }
+
+    @Test
+    public void groupByEnum() {
+        List<Long> millis = Arrays.asList(5L, 5000L, 300000L, 7L, 7200000L);
+        Map<TimeUnit, List<Long>> map = CollectionUtils.groupByEnum(millis,
+                new CollectionUtils.GroupCriteria<TimeUnit, Long>() {
+
+                    @Override
+                    public TimeUnit[] getGroups(Long value) {
+                        if (value >= 3600000L) {
+                            return new TimeUnit[] { TimeUnit.HOURS, null };
+                        }
+                        return new TimeUnit[] { value >= 60000L ? TimeUnit.MINUTES
+                                : value >= 1000L ? TimeUnit.SECONDS : TimeUnit.MILLISECONDS };
+                    }
+                }, TimeUnit.class);
+        Assert.assertEquals(Arrays.asList(TimeUnit.MILLISECONDS, TimeUnit.SECONDS, TimeUnit.MINUTES, TimeUnit.HOURS),
+                new ArrayList<TimeUnit>(map.keySet()));
+        Assert.assertEquals(Arrays.asList(5L, 7L), map.get(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void topAndPartialSort() {
+        List<Integer> data = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            data.add((i * 7919) % 1009);
+        }
+        List<Integer> sorted = new ArrayList<Integer>(data);
+        Collections.sort(sorted);
+        Comparator<Integer> natural = Collections.reverseOrder(Collections.<Integer> reverseOrder());
+        for (int k : new int[] { 0, 1, 10, 100, 10000, 20000 }) {
+            List<Integer> expected = sorted.subList(0, Math.min(k, sorted.size()));
+            Assert.assertEquals(expected, CollectionUtils.top(data, k, natural));
+            List<Integer> copy = new ArrayList<Integer>(data);
+            CollectionUtils.partialSort(copy, k, natural);
+            Assert.assertEquals(expected, copy.subList(0, Math.min(k, copy.size())));
+            Collections.sort(copy);
+            Assert.assertEquals(sorted, copy);
+        }
+    }
+
+    @Test
+    public void groupByKeyTop() {
+        List<Integer> data = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            data.add((i * 7919) % 10007);
+        }
+        CollectionUtils.GroupCriteria<Integer, Integer> criteria = new CollectionUtils.GroupCriteria<Integer, Integer>() {
+
+            @Override
+            public Integer[] getGroups(Integer value) {
+                return new Integer[] { value % 7, value % 2 == 0 ? -1 : -2 };
+            }
+        };
+        Comparator<Integer> reverse = Collections.reverseOrder();
+        Map<Integer, List<Integer>> all = CollectionUtils.groupByKey(data, criteria, reverse, null);
+        Map<Integer, List<Integer>> top = CollectionUtils.groupByKey(data, criteria, 5, reverse, null);
+        Assert.assertEquals(all.keySet(), top.keySet());
+        for (Integer key : all.keySet()) {
+            Assert.assertEquals(all.get(key).subList(0, 5), top.get(key));
+        }
+    }
+
+    @Test
+    public void topKeepsEncounterOrderOfTies() {
+        List<String> data = Arrays.asList("bb", "a1", "cc", "a2", "d", "a3", "e", "a4", "ff");
+        Comparator<String> byLength = new Comparator<String>() {
+
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.length() - o2.length();
+            }
+        };
+        Assert.assertEquals(Arrays.asList("d", "e", "bb", "a1", "cc"), CollectionUtils.top(data, 5, byLength));
+        Assert.assertEquals(Arrays.asList("d", "e", "bb", "a1", "cc", "a2", "a3", "a4", "ff"), CollectionUtils.top(
+                data, 20, byLength));
+
+        CollectionUtils.GroupCriteria<Integer, String> byLengthGroup = new CollectionUtils.GroupCriteria<Integer, String>() {
+
+            @Override
+            public Integer[] getGroups(String value) {
+                return new Integer[] { value.length() };
+            }
+        };
+        Comparator<String> none = new Comparator<String>() {
+
+            @Override
+            public int compare(String o1, String o2) {
+                return 0;
+            }
+        };
+        Map<Integer, List<String>> top = CollectionUtils.groupByKey(data, byLengthGroup, 3, none, null);
+        Assert.assertEquals(Arrays.asList("bb", "a1", "cc"), top.get(2));
+        Assert.assertEquals(Arrays.asList("d", "e"), top.get(1));
+        Map<Integer, List<String>> firstLetter = CollectionUtils.groupByKey(data, byLengthGroup, 3,
+                new Comparator<String>() {
+
+                    @Override
+                    public int compare(String o1, String o2) {
+                        return o1.charAt(0) - o2.charAt(0);
+                    }
+                }, null);
+        Assert.assertEquals(Arrays.asList("a1", "a2", "a3"), firstLetter.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void groupByKeyTopRejectsZero() {
+        CollectionUtils.groupByKey(Arrays.asList("a"), new CollectionUtils.GroupCriteria<String, String>() {
+
+            @Override
+            public String[] getGroups(String value) {
+                return new String[] { value };
+            }
+        }, 0, Collections.<String> reverseOrder(), null);
+    }
+
+    @Test
+    public void batches() {
+        List<Integer> data = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            data.add(i);
+        }
+        List<List<Integer>> chunks = CollectionUtils.partition(data, 4);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(Arrays.asList(8, 9), chunks.get(2));
+        Assert.assertEquals(chunks, new ArrayList<List<Integer>>((List<List<Integer>>) CollectionUtils.batches(data,
+                4, true)));
+        Assert.assertEquals(0, CollectionUtils.partition(new ArrayList<Integer>(), 4).size());
+        // linked lists are copied into chunks
+        Assert.assertEquals(chunks, CollectionUtils.partition(new LinkedList<Integer>(data), 4));
+        Assert.assertEquals(0, CollectionUtils.partition(new LinkedList<Integer>(), 4).size());
+        // but streamed as batches
+        Iterator<List<Integer>> linked = CollectionUtils.batches(new LinkedList<Integer>(data), 4, true).iterator();
+        List<Integer> buffer = linked.next();
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), buffer);
+        Assert.assertSame(buffer, linked.next());
+        Assert.assertEquals(Arrays.asList(8, 9), linked.next());
+        Assert.assertFalse(linked.hasNext());
+
+        Iterator<List<Integer>> it = CollectionUtils.batches(new HashSet<Integer>(data).iterator(), 4, true);
+        List<Integer> first = it.next();
+        Assert.assertEquals(4, first.size());
+        Assert.assertSame(first, it.next());
+        Assert.assertEquals(2, it.next().size());
+        Assert.assertFalse(it.hasNext());
+
+        List<Integer> all = new ArrayList<Integer>();
+        for (List<Integer> batch : CollectionUtils.batches(new TreeSet<Integer>(data), 3, false)) {
+            Assert.assertTrue(batch.size() <= 3);
+            all.addAll(batch);
+        }
+        Assert.assertEquals(data, all);
+
+        ChildIterator.IChildProvider<Integer> tree = new ChildIterator.IChildProvider<Integer>() {
+
+            @Override
+            public Iterable<Integer> getChildren(Integer container) {
+                return container < 10 ? Arrays.asList(container * 2 + 10, container * 2 + 11) : Collections
+                        .<Integer> emptyList();
+            }
+        };
+        int count = 0;
+        for (Iterator<List<Integer>> batches = CollectionUtils.batches(ChildIterator.createIterator(tree, 0, 1), 5,
+                true); batches.hasNext();) {
+            count += batches.next().size();
+        }
+        Assert.assertEquals(6, count);
+    }
+
+    @Test
+    public void sortedSetResultsAreBuiltWithoutComparing() {
+        final int[] calls = new int[1];
+        Comparator<Integer> counting = new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                calls[0]++;
+                return o1.compareTo(o2);
+            }
+        };
+        SortedSet<Integer> set = new TreeSet<Integer>(counting);
+        for (int i = 0; i < 10000; i++) {
+            set.add(i);
+        }
+        calls[0] = 0;
+        SortedSet<Integer> result = CollectionUtils.difference(set, new ArrayList<SortedSet<Integer>>());
+        // the tree is built from the sorted elements, no element is inserted by comparing
+        Assert.assertEquals(0, calls[0]);
+        Assert.assertEquals(new ArrayList<Integer>(set), new ArrayList<Integer>(result));
+        Assert.assertSame(counting, result.comparator());
+        Assert.assertTrue(result.contains(9999));
+
+        SortedSet<String> natural = CollectionUtils.union(null, Arrays.asList(new TreeSet<String>(Arrays.asList("b",
+                "a")), new TreeSet<String>(Arrays.asList("c", "a"))));
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<String>(natural));
+        Assert.assertEquals("c", natural.last());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sortedSetOperations() {
+        Comparator<Integer> reverse = Collections.reverseOrder();
+        SortedSet<Integer> s1 = new TreeSet<Integer>(reverse);
+        SortedSet<Integer> s2 = new TreeSet<Integer>(reverse);
+        SortedSet<Integer> s3 = new TreeSet<Integer>(reverse);
+        for (int i = 0; i < 1000; i++) {
+            s1.add(i * 2);
+            s2.add(i * 3);
+            s3.add(i * 5);
+        }
+        IFilter<Integer> odd = new IFilter<Integer>() {
+
+            @Override
+            public boolean accept(Integer value) {
+                return value % 2 == 1;
+            }
+        };
+        SortedSet<Integer> expected = new TreeSet<Integer>(reverse);
+        expected.addAll(s1);
+        expected.addAll(s2);
+        expected.addAll(s3);
+        SortedSet<Integer> union = CollectionUtils.union(null, Arrays.asList(s1, null, s2, s3));
+        Assert.assertEquals(expected, union);
+        Assert.assertEquals(new ArrayList<Integer>(expected), new ArrayList<Integer>(union));
+        Assert.assertSame(reverse, union.comparator());
+        Assert.assertEquals(CollectionUtils.filter(expected, odd), CollectionUtils.union(odd, Arrays.asList(s1, s2,
+                s3)));
+
+        expected.clear();
+        for (int i = 1980; i >= 0; i -= 30) {
+            expected.add(i);
+        }
+        Assert.assertEquals(new ArrayList<Integer>(expected), new ArrayList<Integer>(CollectionUtils.intersection(Arrays
+                .asList(s3, s1, s2))));
+        Assert.assertTrue(CollectionUtils.intersection(Arrays.asList(s1, new TreeSet<Integer>(reverse))).isEmpty());
+
+        expected = new TreeSet<Integer>(s1);
+        expected.removeAll(s2);
+        expected.removeAll(s3);
+        Assert.assertEquals(new ArrayList<Integer>(expected), new ArrayList<Integer>(CollectionUtils.difference(s1,
+                Arrays.asList(s2, null, s3))));
+
+        Assert.assertTrue(CollectionUtils.intersection(new ArrayList<SortedSet<Integer>>()).isEmpty());
+
+        try {
+            CollectionUtils.union(null, Arrays.asList(s1, new TreeSet<Integer>()));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     private static class Category implements Comparable<Category> {
         private static enum Type {
             FirstLetter, Length
@@ -166,6 +760,62 @@ public class CollectionUtilsTest {
         Assert.assertTrue(getNode(Node.class, lb11, newC11Children) == null);
     }
     
+    private static class PrefixFilter implements IFilter<Node> {
+
+        private final String prefix;
+
+        PrefixFilter(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean accept(Node object) {
+            return object instanceof Leaf && ((Leaf) object).data.startsWith(prefix);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PrefixFilter && ((PrefixFilter) obj).prefix.equals(prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return prefix.hashCode();
+        }
+    }
+
+    @Test
+    public void hierarchicalFilter() throws Exception {
+        List<Node> list = new ArrayList<Node>();
+        for (int i = 0; i < 50; i++) {
+            list.add(new Container("c" + i, new Container("c" + i + "_1", new Leaf("A1_" + i), new Leaf("AB_" + i)),
+                    new Leaf("B_" + i)));
+        }
+        list.add(new Leaf("AB"));
+        CompositeNodeHandler handler = new CompositeNodeHandler();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertEquals(String.valueOf(CollectionUtils.filter(list, new PrefixFilter("A"), handler)), String
+                    .valueOf(CollectionUtils.parallelFilter(list, new PrefixFilter("A"), handler, executor, 10)));
+
+            HierarchicalFilter<Node> filter = new HierarchicalFilter<Node>(list, handler);
+            filter.setExecutor(executor, 10);
+            List<Node> a = filter.filter(new PrefixFilter("A"));
+            Assert.assertEquals(51, a.size());
+            Assert.assertSame(a, filter.narrow(new PrefixFilter("A")));
+            List<Node> ab = filter.narrow(new PrefixFilter("AB"));
+            Assert.assertEquals(String.valueOf(CollectionUtils.filter(list, new PrefixFilter("AB"), handler)), String
+                    .valueOf(ab));
+            List<Node> ab1 = filter.narrow(new PrefixFilter("AB_1"));
+            // the containers of c1 just contain matching leafs and are reused
+            Assert.assertSame(ab.get(1), ab1.get(0));
+            Assert.assertSame(a, filter.filter(new PrefixFilter("A")));
+            Assert.assertNotSame(ab, filter.narrow(new PrefixFilter("AB")));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static <T extends Node> T getNode(Class<T> type, Node master, List<Node> nodes) {
         for (Node node : nodes) {
@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package org.flowr.utils.collections;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author skrause
+ *
+ */
+public class ExternalSorterTest {
+
+	private static File createDirectory() throws Exception {
+		File directory = File.createTempFile("sorter", "");
+		directory.delete();
+		directory.mkdir();
+		return directory;
+	}
+
+	private static void delete(File directory) {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static List<Integer> numbers(int count) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			result.add((i * 7919) % 1009);
+		}
+		return result;
+	}
+
+	private static ExternalSorter sorter(File directory, long limit) {
+		ExternalSorter sorter = new ExternalSorter(limit);
+		sorter.setTempDirectory(directory);
+		sorter.setMaxFanIn(3);
+		return sorter;
+	}
+
+	@Test
+	public void testSort() throws Exception {
+		File directory = createDirectory();
+		try {
+			List<Integer> data = numbers(10000);
+			List<Integer> expected = new ArrayList<Integer>(data);
+			Collections.sort(expected);
+			Comparator<Integer> natural = Collections.reverseOrder(Collections.<Integer> reverseOrder());
+			for (long limit : new long[] { 100, 3000, 20000 }) {
+				List<Integer> result = new ArrayList<Integer>();
+				ExternalSorter.SortedIterator<Integer> it = sorter(directory, limit).sort(data, natural,
+						ExternalSorter.INTEGER_CODEC);
+				try {
+					while (it.hasNext()) {
+						result.add(it.next());
+					}
+				} finally {
+					it.close();
+				}
+				Assert.assertEquals(expected, result);
+				Assert.assertEquals(0, directory.listFiles().length);
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		File directory = createDirectory();
+		try {
+			List<String> data = Arrays.asList("d", "a", "c", "b", "e", "f", "x", "y", "z", "k", "l", "m", "n");
+			ExternalSorter.SortedIterator<String> it = sorter(directory, 10).sort(data,
+					Collections.<String> reverseOrder(), ExternalSorter.STRING_CODEC);
+			Assert.assertEquals("z", it.next());
+			Assert.assertTrue(directory.listFiles().length > 0);
+			it.close();
+			Assert.assertFalse(it.hasNext());
+			Assert.assertEquals(0, directory.listFiles().length);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testGroupByKey() throws Exception {
+		File directory = createDirectory();
+		try {
+			List<Integer> data = numbers(5000);
+			CollectionUtils.GroupCriteria<String, Integer> criteria = new CollectionUtils.GroupCriteria<String, Integer>() {
+
+				@Override
+				public String[] getGroups(Integer value) {
+					return value % 2 == 0 ? new String[] { "m" + value % 13, "even" } : new String[] { "m" + value % 13 };
+				}
+			};
+			Comparator<String> keys = Collections.reverseOrder(Collections.<String> reverseOrder());
+			Map<String, List<Integer>> expected = CollectionUtils.groupByKey(data, criteria, (Comparator<Integer>) null,
+					keys);
+			final Map<String, List<Integer>> result = new LinkedHashMap<String, List<Integer>>();
+			sorter(directory, 700).groupByKey(data, criteria, keys, ExternalSorter.STRING_CODEC, null,
+					ExternalSorter.INTEGER_CODEC, new ExternalSorter.IGroupConsumer<String, Integer>() {
+
+						@Override
+						public void accept(String key, Iterator<Integer> values) {
+							List<Integer> list = new ArrayList<Integer>();
+							while (values.hasNext()) {
+								list.add(values.next());
+							}
+							Assert.assertNull(result.put(key, list));
+						}
+					});
+			Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(result.keySet()));
+			Assert.assertEquals(expected, result);
+			Assert.assertEquals(0, directory.listFiles().length);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testNaturalOrder() throws Exception {
+		File directory = createDirectory();
+		try {
+			List<Integer> data = numbers(2000);
+			List<Integer> expected = new ArrayList<Integer>(data);
+			Collections.sort(expected);
+			List<Integer> result = new ArrayList<Integer>();
+			// spills several runs without comparator
+			ExternalSorter.SortedIterator<Integer> it = sorter(directory, 100).sort(data, null,
+					ExternalSorter.INTEGER_CODEC);
+			try {
+				while (it.hasNext()) {
+					result.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+			Assert.assertEquals(expected, result);
+			Assert.assertEquals(0, directory.listFiles().length);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testGroupByKeyPartiallyConsumed() throws Exception {
+		File directory = createDirectory();
+		try {
+			List<Integer> data = numbers(3000);
+			CollectionUtils.GroupCriteria<Integer, Integer> criteria = new CollectionUtils.GroupCriteria<Integer, Integer>() {
+
+				@Override
+				public Integer[] getGroups(Integer value) {
+					return new Integer[] { value % 5 };
+				}
+			};
+			final List<Integer> keys = new ArrayList<Integer>();
+			final List<Integer> firstValues = new ArrayList<Integer>();
+			sorter(directory, 200).groupByKey(data, criteria, null, ExternalSorter.INTEGER_CODEC, null,
+					ExternalSorter.INTEGER_CODEC, new ExternalSorter.IGroupConsumer<Integer, Integer>() {
+
+						@Override
+						public void accept(Integer key, Iterator<Integer> values) {
+							keys.add(key);
+							// the rest of the group is skipped
+							firstValues.add(values.next());
+						}
+					});
+			Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), keys);
+			// the values keep their encounter order
+			Map<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>();
+			for (Integer value : data) {
+				if (!expected.containsKey(value % 5)) {
+					expected.put(value % 5, value);
+				}
+			}
+			for (int i = 0; i < keys.size(); i++) {
+				Assert.assertEquals(expected.get(keys.get(i)), firstValues.get(i));
+			}
+			Assert.assertEquals(0, directory.listFiles().length);
+		} finally {
+			delete(directory);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ *
+ */
+package org.flowr.utils.collections;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.flowr.utils.IFilter;
+
+/**
+ * measures the identity set based results of {@link CollectionUtils#filter(Set, IFilter)},
+ * {@link CollectionUtils#merge(IFilter, Set...)} and {@link CollectionUtils#remove(Set, IFilter)} for 1M elements,
+ * whose identity hash codes collide. Not a unit test, run it via {@link #main(String[])}.
+ *
+ * @author skrause
+ *
+ */
+public class IdentitySetBenchmark {
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Set<Object> source = new HashSet<Object>(size * 2);
+		for (int i = 0; i < size; i++) {
+			source.add(new Object());
+		}
+		IFilter<Object> all = new IFilter<Object>() {
+
+			@Override
+			public boolean accept(Object object) {
+				return true;
+			}
+		};
+		long start = System.currentTimeMillis();
+		Set<Object> filtered = CollectionUtils.filter(source, all);
+		long filterTime = System.currentTimeMillis() - start;
+		check(size, filtered);
+
+		start = System.currentTimeMillis();
+		Set<Object> merged = CollectionUtils.merge(all, source, filtered);
+		long mergeTime = System.currentTimeMillis() - start;
+		check(size, merged);
+
+		start = System.currentTimeMillis();
+		Set<Object> removed = CollectionUtils.remove(new HashSet<Object>(source), all);
+		long removeTime = System.currentTimeMillis() - start;
+		check(size, removed);
+		System.out.println(size + " elements: filter " + filterTime + " ms, merge " + mergeTime + " ms, remove "
+				+ removeTime + " ms");
+	}
+
+	private static void check(int size, Set<Object> result) {
+		// identity hash codes of 1M objects collide, a set ordered by identity hash code drops elements
+		if (result.size() != size) {
+			throw new IllegalStateException("expected " + size + " elements, but got " + result.size());
+		}
+	}
+}
@@ -0,0 +1,591 @@
+/**
+ *
+ */
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author skrause
+ *
+ */
+public class LazyCompositeTest {
+
+	private static class Node extends LazyComposite<String> {
+
+		private final int width;
+
+		private final int depth;
+
+		private final AtomicInteger loads;
+
+		Node(Composite<?> parent, String object, int width, int depth, AtomicInteger loads) {
+			super(parent, object);
+			this.width = width;
+			this.depth = depth;
+			this.loads = loads;
+		}
+
+		@Override
+		protected void initializeChildren() {
+			loads.incrementAndGet();
+			if (depth > 0) {
+				for (int i = 0; i < width; i++) {
+					new Node(this, getObject() + "." + i, width, depth - 1, loads);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testGetChildrenAsync() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 3, 2, loads);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			root.setExecutor(executor);
+			Future<List<Composite<?>>> future = root.getChildrenAsync();
+			Assert.assertEquals(3, future.get().size());
+			Assert.assertTrue(root.isLoaded());
+			Assert.assertEquals(1, loads.get());
+			Assert.assertEquals(3, root.getChildrenAsync().get().size());
+			Assert.assertEquals(1, loads.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testGetChildrenAsyncWithoutExecutor() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 2, 1, loads);
+		Future<List<Composite<?>>> future = root.getChildrenAsync();
+		Assert.assertTrue(future.isDone());
+		Assert.assertEquals(2, future.get().size());
+	}
+
+	@Test
+	public void testPrefetchNextLevel() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 3, 3, loads);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			root.setExecutor(executor);
+			root.setPrefetchPolicy(LazyComposite.prefetchNextLevel());
+			List<Composite<?>> children = root.getChildren();
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+			for (Composite<?> child : children) {
+				Assert.assertTrue(((LazyComposite<?>) child).isLoaded());
+				for (Composite<?> grandChild : ((LazyComposite<?>) child).getChildrenList()) {
+					// prefetched nodes don't prefetch on their own
+					Assert.assertFalse(((LazyComposite<?>) grandChild).isLoaded());
+				}
+			}
+			Assert.assertEquals(4, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPrefetchSiblings() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 4, 2, loads);
+		List<Composite<?>> children = root.getChildren();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			root.setExecutor(executor);
+			root.setPrefetchPolicy(LazyComposite.prefetchSiblings(2));
+			children.get(0).getChildren();
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+			Assert.assertTrue(((LazyComposite<?>) children.get(1)).isLoaded());
+			Assert.assertTrue(((LazyComposite<?>) children.get(2)).isLoaded());
+			Assert.assertFalse(((LazyComposite<?>) children.get(3)).isLoaded());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testBudgetReleasesLeastRecentlyAccessed() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 3, 3, loads);
+		LazyCompositeBudget budget = new LazyCompositeBudget(9);
+		root.setBudget(budget);
+		List<Composite<?>> children = root.getChildren();
+		LazyComposite<?> c0 = (LazyComposite<?>) children.get(0);
+		LazyComposite<?> c1 = (LazyComposite<?>) children.get(1);
+		LazyComposite<?> c2 = (LazyComposite<?>) children.get(2);
+		c0.getChildren();
+		c1.getChildren();
+		Assert.assertEquals(9, budget.getWeight());
+		// c2 exceeds the budget, c0 is the least recently accessed subtree
+		c2.getChildren();
+		Assert.assertTrue(root.isLoaded());
+		Assert.assertFalse(c0.isLoaded());
+		Assert.assertTrue(c1.isLoaded());
+		Assert.assertTrue(c2.isLoaded());
+		Assert.assertEquals(9, budget.getWeight());
+		Assert.assertEquals(3, budget.getLoadedCount());
+
+		// transparent reload
+		Assert.assertEquals(3, c0.getChildren().size());
+		Assert.assertFalse(c1.isLoaded());
+		Assert.assertEquals(5, loads.get());
+	}
+
+	@Test
+	public void testBudgetReleasesNestedSubtree() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 2, 3, loads);
+		LazyCompositeBudget budget = new LazyCompositeBudget(6);
+		root.setBudget(budget);
+		LazyComposite<?> c0 = (LazyComposite<?>) root.getChildren().get(0);
+		LazyComposite<?> c00 = (LazyComposite<?>) c0.getChildren().get(0);
+		c00.getChildren();
+		Assert.assertEquals(6, budget.getWeight());
+		LazyComposite<?> c1 = (LazyComposite<?>) root.getChildren().get(1);
+		c1.getChildren();
+		// c0 and its loaded child c00 are released as one subtree
+		Assert.assertFalse(c0.isLoaded());
+		Assert.assertEquals(4, budget.getWeight());
+		Assert.assertEquals(2, budget.getLoadedCount());
+	}
+
+	@Test
+	public void testBudgetSnapshotIsCached() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 3, 2, loads);
+		root.setBudget(new LazyCompositeBudget(100));
+		List<Composite<?>> children = root.getChildren();
+		Assert.assertSame(children, root.getChildren());
+		Assert.assertSame(children, root.getChildrenAsync().get());
+		root.releaseChilldren();
+		List<Composite<?>> reloaded = root.getChildren();
+		Assert.assertNotSame(children, reloaded);
+		// the snapshot handed out before the release is not cleared
+		Assert.assertEquals(3, children.size());
+		Assert.assertEquals(3, reloaded.size());
+	}
+
+	@Test
+	public void testBudgetEvictsManySubtrees() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 100, 2, loads);
+		final List<Composite<?>> heavy = new ArrayList<Composite<?>>();
+		LazyCompositeBudget budget = new LazyCompositeBudget(100 + 99 * 100) {
+
+			@Override
+			protected long weigh(LazyComposite<?> composite) {
+				return heavy.contains(composite) ? 99 * 100 : super.weigh(composite);
+			}
+		};
+		root.setBudget(budget);
+		List<Composite<?>> children = root.getChildren();
+		for (int i = 0; i < 99; i++) {
+			((LazyComposite<?>) children.get(i)).getChildren();
+		}
+		Assert.assertEquals(100, budget.getLoadedCount());
+		// the last child evicts all other children at once
+		heavy.add(children.get(99));
+		((LazyComposite<?>) children.get(99)).getChildren();
+		Assert.assertEquals(2, budget.getLoadedCount());
+		Assert.assertEquals(100 + 99 * 100, budget.getWeight());
+		for (int i = 0; i < 99; i++) {
+			Assert.assertFalse(((LazyComposite<?>) children.get(i)).isLoaded());
+		}
+		Assert.assertTrue(root.isLoaded());
+	}
+
+	@Test
+	public void testBudgetSnapshotUnderConcurrentRelease() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 3, 2, loads);
+		// root and one child fit, loading another child releases the least recently accessed one
+		root.setBudget(new LazyCompositeBudget(6));
+		final List<Composite<?>> children = root.getChildren();
+		final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < children.size(); t++) {
+			final LazyComposite<?> child = (LazyComposite<?>) children.get(t);
+			threads.add(new Thread() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						int size = child.getChildren().size();
+						if (size != 3 || !child.hasChildren() || child.getChildCount() != 3) {
+							failures.add(child.getObject() + ": " + size);
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(Collections.emptyList(), failures);
+	}
+
+	@Test
+	public void testBatchLoader() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 5, 1, loads);
+		final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Composite<?>> children = root.getChildren();
+		root.setBatchLoader(new LazyCompositeBatchLoader(3, 100, TimeUnit.MILLISECONDS) {
+
+			@Override
+			protected void loadChildren(List<LazyComposite<?>> composites) {
+				batchSizes.add(composites.size());
+				for (LazyComposite<?> composite : composites) {
+					new Composite<String>(composite, "leaf");
+				}
+			}
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		try {
+			root.setExecutor(executor);
+			List<Future<List<Composite<?>>>> futures = new ArrayList<Future<List<Composite<?>>>>();
+			for (Composite<?> child : children) {
+				futures.add(((LazyComposite<?>) child).getChildrenAsync());
+			}
+			for (Future<List<Composite<?>>> future : futures) {
+				Assert.assertEquals(1, future.get().size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		// one full batch of 3 and the remaining 2 after the window elapsed
+		Collections.sort(batchSizes);
+		Assert.assertEquals(Arrays.asList(2, 3), batchSizes);
+		Assert.assertEquals(1, loads.get());
+	}
+
+	private static LazyCompositeBatchLoader recordingLoader(int maxBatchSize, long window,
+			final List<Integer> batchSizes) {
+		return new LazyCompositeBatchLoader(maxBatchSize, window, TimeUnit.MILLISECONDS) {
+
+			@Override
+			protected void loadChildren(List<LazyComposite<?>> composites) {
+				batchSizes.add(composites.size());
+				for (LazyComposite<?> composite : composites) {
+					new Composite<String>(composite, "leaf");
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testBatchLoaderSingleThreadedCaller() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 40, 1, loads);
+		List<Composite<?>> children = root.getChildren();
+		List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+		root.setBatchLoader(recordingLoader(500, 50, batchSizes));
+		List<Future<List<Composite<?>>>> futures = new ArrayList<Future<List<Composite<?>>>>();
+		for (Composite<?> child : children) {
+			futures.add(((LazyComposite<?>) child).getChildrenAsync());
+		}
+		for (Future<List<Composite<?>>> future : futures) {
+			Assert.assertEquals(1, future.get(5, TimeUnit.SECONDS).size());
+		}
+		// all requests of the single caller thread are coalesced into one batch
+		Assert.assertEquals(Arrays.asList(40), batchSizes);
+	}
+
+	@Test
+	public void testBatchLoaderSynchronousAccessDoesNotWaitForWindow() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 10, 1, loads);
+		List<Composite<?>> children = root.getChildren();
+		List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+		root.setBatchLoader(recordingLoader(500, 60000, batchSizes));
+		// a pending asynchronous request joins the batch of the next synchronous access
+		Future<List<Composite<?>>> future = ((LazyComposite<?>) children.get(9)).getChildrenAsync();
+		long start = System.nanoTime();
+		for (int i = 0; i < 9; i++) {
+			Assert.assertEquals(1, children.get(i).getChildren().size());
+		}
+		Assert.assertEquals(1, future.get(5, TimeUnit.SECONDS).size());
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+		Assert.assertEquals(Integer.valueOf(2), batchSizes.get(0));
+		Assert.assertEquals(9, batchSizes.size());
+	}
+
+	@Test
+	public void testBatchLoaderFailure() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 2, 1, loads);
+		List<Composite<?>> children = root.getChildren();
+		final AtomicInteger calls = new AtomicInteger();
+		root.setBatchLoader(new LazyCompositeBatchLoader(10, 20, TimeUnit.MILLISECONDS) {
+
+			@Override
+			protected void loadChildren(List<LazyComposite<?>> composites) {
+				if (calls.incrementAndGet() == 1) {
+					throw new IllegalStateException("broken");
+				}
+				for (LazyComposite<?> composite : composites) {
+					new Composite<String>(composite, "leaf");
+				}
+			}
+		});
+		LazyComposite<?> child = (LazyComposite<?>) children.get(0);
+		try {
+			child.getChildrenAsync().get(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		Assert.assertFalse(child.isLoaded());
+		Assert.assertEquals(1, child.getChildren().size());
+	}
+
+	@Test
+	public void testBatchLoaderAsyncThenSync() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 2, 1, loads);
+		List<Composite<?>> children = root.getChildren();
+		List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+		root.setBatchLoader(recordingLoader(500, 60000, batchSizes));
+		LazyCompositeStatistics statistics = new LazyCompositeStatistics(false);
+		root.setStatistics(statistics);
+		LazyComposite<?> child = (LazyComposite<?>) children.get(0);
+		// the synchronous access loads the batch holding the asynchronous request of the same composite
+		Future<List<Composite<?>>> future = child.getChildrenAsync();
+		Assert.assertEquals(1, child.getChildren().size());
+		Assert.assertTrue(child.isLoaded());
+		Assert.assertEquals(1, future.get(5, TimeUnit.SECONDS).size());
+		Assert.assertEquals(Arrays.asList(1), batchSizes);
+		Assert.assertEquals(1, statistics.getMetrics().getLoads());
+		Assert.assertEquals(1, statistics.getMetrics().getLoadedChildren());
+	}
+
+	@Test
+	public void testBatchLoaderStatisticsTime() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 2, 1, loads);
+		List<Composite<?>> children = root.getChildren();
+		root.setBatchLoader(new LazyCompositeBatchLoader(10, 60000, TimeUnit.MILLISECONDS) {
+
+			@Override
+			protected void loadChildren(List<LazyComposite<?>> composites) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				for (LazyComposite<?> composite : composites) {
+					new Composite<String>(composite, "leaf");
+				}
+			}
+		});
+		LazyCompositeStatistics statistics = new LazyCompositeStatistics(false);
+		root.setStatistics(statistics);
+		Assert.assertEquals(1, ((LazyComposite<?>) children.get(0)).getChildren().size());
+		Assert.assertEquals(1, statistics.getMetrics().getLoads());
+		// the time of the batch is recorded, not the time taking over the children
+		Assert.assertTrue(statistics.getMetrics().getTotalTime() >= 50);
+	}
+
+	@Test
+	public void testBatchLoaderAsyncThenSyncFailure() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 2, 1, loads);
+		List<Composite<?>> children = root.getChildren();
+		final AtomicInteger calls = new AtomicInteger();
+		root.setBatchLoader(new LazyCompositeBatchLoader(10, 60000, TimeUnit.MILLISECONDS) {
+
+			@Override
+			protected void loadChildren(List<LazyComposite<?>> composites) {
+				if (calls.incrementAndGet() == 1) {
+					throw new IllegalStateException("broken");
+				}
+				for (LazyComposite<?> composite : composites) {
+					new Composite<String>(composite, "leaf");
+				}
+			}
+		});
+		LazyComposite<?> child = (LazyComposite<?>) children.get(0);
+		Future<List<Composite<?>>> future = child.getChildrenAsync();
+		try {
+			child.getChildren();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		Assert.assertFalse(child.isLoaded());
+		// the next access loads again
+		Assert.assertEquals(1, child.getChildren().size());
+		Assert.assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testChildCountHint() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 2, 2, loads) {
+
+			@Override
+			protected int childCountHint() {
+				return 2;
+			}
+		};
+		Node unknown = new Node(null, "unknown", 0, 1, loads);
+		Assert.assertTrue(root.hasChildren());
+		Assert.assertEquals(2, root.getEstimatedChildCount());
+		Assert.assertFalse(root.isLoaded());
+		Assert.assertEquals(0, loads.get());
+		Assert.assertEquals(LazyComposite.UNKNOWN_CHILD_COUNT, unknown.getEstimatedChildCount());
+		// no hint falls back to loading
+		Assert.assertFalse(unknown.hasChildren());
+		Assert.assertTrue(unknown.isLoaded());
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(0, unknown.getEstimatedChildCount());
+		// the exact count loads the children
+		Assert.assertEquals(2, root.getChildCount());
+		Assert.assertTrue(root.isLoaded());
+	}
+
+	@Test
+	public void testPagedChildren() throws Exception {
+		final List<Integer> offsets = new ArrayList<Integer>();
+		LazyComposite<String> wide = new LazyComposite<String>(null, "wide") {
+
+			@Override
+			protected void initializeChildren(int offset, int limit) {
+				offsets.add(offset);
+				for (int i = offset; i < Math.min(offset + limit, 25); i++) {
+					new Composite<String>(this, "child" + i);
+				}
+			}
+		};
+		wide.setPaging(10, 2);
+		List<Composite<?>> window = wide.getChildren(8, 4);
+		Assert.assertEquals(4, window.size());
+		Assert.assertEquals("child8", window.get(0).getObject());
+		Assert.assertEquals("child11", window.get(3).getObject());
+		Assert.assertEquals(Arrays.asList(0, 10), offsets);
+		Assert.assertSame(wide, window.get(0).getParent());
+
+		// the last page is short
+		window = wide.getChildren(18, 100);
+		Assert.assertEquals(7, window.size());
+		Assert.assertEquals("child24", window.get(6).getObject());
+		Assert.assertEquals(Arrays.asList(0, 10, 20), offsets);
+		Assert.assertEquals(2, wide.getLoadedPageCount());
+
+		// page 0 has been evicted as least recently accessed page
+		Assert.assertEquals(1, wide.getChildren(0, 1).size());
+		Assert.assertEquals(Arrays.asList(0, 10, 20, 0), offsets);
+		Assert.assertTrue(wide.getChildren(30, 5).isEmpty());
+
+		// the non paged accessors don't load all children
+		Assert.assertTrue(wide.hasChildren());
+		Assert.assertFalse(wide.isLoaded());
+		Assert.assertEquals(LazyComposite.UNKNOWN_CHILD_COUNT, wide.getEstimatedChildCount());
+		// the count is known since the short last page has been loaded
+		Assert.assertEquals(25, wide.getChildCount());
+		List<Composite<?>> children = wide.getChildren();
+		Assert.assertEquals(25, children.size());
+		Assert.assertEquals("child24", children.get(24).getObject());
+		Assert.assertFalse(wide.isLoaded());
+		// the evicted last page is reloaded on access
+		Assert.assertEquals(Arrays.asList(0, 10, 20, 0, 30, 20), offsets);
+
+		LazyComposite<String> empty = new LazyComposite<String>(null, "empty") {};
+		empty.setPaging(10, 1);
+		Assert.assertFalse(empty.hasChildren());
+		Assert.assertFalse(empty.isLoaded());
+	}
+
+	@Test
+	public void testIteratePagedTree() throws Exception {
+		final List<Integer> offsets = new ArrayList<Integer>();
+		Composite<String> root = new Composite<String>(null, "root");
+		LazyComposite<String> wide = new LazyComposite<String>(root, "wide") {
+
+			@Override
+			protected void initializeChildren(int offset, int limit) {
+				offsets.add(offset);
+				for (int i = offset; i < Math.min(offset + limit, 25); i++) {
+					new Composite<String>(this, "child" + i);
+				}
+			}
+		};
+		wide.setPaging(10, 2);
+		new Composite<String>(root, "sibling");
+
+		List<Object> objects = new ArrayList<Object>();
+		for (Composite<?> c : root) {
+			objects.add(c.getObject());
+		}
+		Assert.assertEquals(28, objects.size());
+		Assert.assertEquals("wide", objects.get(1));
+		Assert.assertEquals("child0", objects.get(2));
+		Assert.assertEquals("child24", objects.get(26));
+		Assert.assertEquals("sibling", objects.get(27));
+		Assert.assertEquals(28, root.getAllChildren().size());
+		Assert.assertEquals(25, wide.getTypedChildren(Composite.class).size());
+		Assert.assertFalse(wide.isLoaded());
+		Assert.assertTrue(wide.getLoadedPageCount() <= 2);
+
+		// the paged view iterates page by page
+		offsets.clear();
+		int count = 0;
+		for (Composite<?> c : wide.getChildren()) {
+			Assert.assertEquals("child" + count++, c.getObject());
+		}
+		Assert.assertEquals(25, count);
+		Assert.assertEquals(Arrays.asList(0, 10, 20), offsets);
+		Assert.assertEquals(25, wide.getChildrenAsync().get().size());
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Node root = new Node(null, "root", 3, 2, loads);
+		LazyCompositeStatistics statistics = new LazyCompositeStatistics(true);
+		root.setStatistics(statistics);
+		List<Composite<?>> children = root.getChildren();
+		((Node) children.get(0)).getChildren();
+		((Node) children.get(0)).releaseChilldren();
+		((Node) children.get(0)).getChildren();
+
+		LazyCompositeStatistics.Metrics total = statistics.getMetrics();
+		Assert.assertEquals(3, total.getLoads());
+		Assert.assertEquals(1, total.getReloads());
+		Assert.assertEquals(9, total.getLoadedChildren());
+		Assert.assertEquals(0, total.getWaiters());
+		long histogramLoads = 0;
+		for (long count : total.getHistogram()) {
+			histogramLoads += count;
+		}
+		Assert.assertEquals(3, histogramLoads);
+		Assert.assertEquals(3, statistics.getMetrics(Node.class).getLoads());
+		Assert.assertEquals(1, statistics.getMetricsByClass().size());
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ *
+ */
+package org.flowr.utils.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author skrause
+ *
+ */
+public class ParallelChildTraversalTest {
+
+	private static final ChildIterator.IChildProvider<Integer> TREE = new ChildIterator.IChildProvider<Integer>() {
+
+		@Override
+		public Iterable<Integer> getChildren(Integer container) {
+			List<Integer> children = new ArrayList<Integer>();
+			if (container < 1000) {
+				for (int i = 0; i < 4; i++) {
+					children.add(container * 4 + i);
+				}
+			}
+			return children;
+		}
+	};
+
+	private static List<Integer> sequential(Integer... roots) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (Iterator<Integer> it = ChildIterator.createIterator(TREE, roots); it.hasNext();) {
+			result.add(it.next());
+		}
+		return result;
+	}
+
+	@Test
+	public void testTraverse() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final Set<Integer> result = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+			new ParallelChildTraversal<Integer>(TREE, executor).traverse(Arrays.asList(1, 2),
+					new ParallelChildTraversal.IConsumer<Integer>() {
+
+						@Override
+						public void accept(Integer element) {
+							Assert.assertTrue(result.add(element));
+						}
+					});
+			List<Integer> expected = sequential(1, 2);
+			Assert.assertEquals(expected.size(), result.size());
+			Assert.assertTrue(result.containsAll(expected));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testTraverseOrdered() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Integer> result = new ArrayList<Integer>();
+			new ParallelChildTraversal<Integer>(TREE, executor).traverseOrdered(Arrays.asList(1, 2),
+					new ParallelChildTraversal.IConsumer<Integer>() {
+
+						@Override
+						public void accept(Integer element) {
+							result.add(element);
+						}
+					});
+			Assert.assertEquals(sequential(1, 2), result);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testTraverseOrderedLookAhead() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final AtomicInteger requests = new AtomicInteger();
+			final List<Integer> result = new ArrayList<Integer>();
+			new ParallelChildTraversal<Integer>(new ChildIterator.IChildProvider<Integer>() {
+
+				@Override
+				public Iterable<Integer> getChildren(Integer container) {
+					requests.incrementAndGet();
+					return TREE.getChildren(container);
+				}
+			}, executor, 3).traverseOrdered(Arrays.asList(1, 2), new ParallelChildTraversal.IConsumer<Integer>() {
+
+				@Override
+				public void accept(Integer element) {
+					result.add(element);
+					// the requests of the consumed elements and at most 3 ahead
+					Assert.assertTrue(requests.get() <= result.size() + 3);
+				}
+			});
+			Assert.assertEquals(sequential(1, 2), result);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testTraverseOrderedCancel() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		final CountDownLatch never = new CountDownLatch(1);
+		try {
+			new ParallelChildTraversal<Integer>(new ChildIterator.IChildProvider<Integer>() {
+
+				@Override
+				public Iterable<Integer> getChildren(Integer container) {
+					if (container > 1) {
+						try {
+							never.await();
+						} catch (InterruptedException e) {
+							return Collections.emptyList();
+						}
+					}
+					return TREE.getChildren(container);
+				}
+			}, executor, 4).traverseOrdered(Arrays.asList(1), new ParallelChildTraversal.IConsumer<Integer>() {
+
+				@Override
+				public void accept(Integer element) {
+					if (element > 1) {
+						throw new IllegalArgumentException("stop");
+					}
+				}
+			});
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		} finally {
+			executor.shutdown();
+		}
+		// the blocked requests have been cancelled
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testTraverseOrderedInterrupted() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		final CountDownLatch never = new CountDownLatch(1);
+		Thread.currentThread().interrupt();
+		try {
+			new ParallelChildTraversal<Integer>(new ChildIterator.IChildProvider<Integer>() {
+
+				@Override
+				public Iterable<Integer> getChildren(Integer container) {
+					try {
+						never.await();
+					} catch (InterruptedException e) {
+						return Collections.emptyList();
+					}
+					return TREE.getChildren(container);
+				}
+			}, executor).traverseOrdered(Arrays.asList(1), new ParallelChildTraversal.IConsumer<Integer>() {
+
+				@Override
+				public void accept(Integer element) {
+				}
+			});
+			Assert.fail();
+		} catch (InterruptedException e) {
+			// the interrupt status is kept
+			Assert.assertTrue(Thread.interrupted());
+		} finally {
+			Thread.interrupted();
+			executor.shutdown();
+		}
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTraverseFailure() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			new ParallelChildTraversal<Integer>(new ChildIterator.IChildProvider<Integer>() {
+
+				@Override
+				public Iterable<Integer> getChildren(Integer container) {
+					if (container == 7) {
+						throw new IllegalArgumentException("broken");
+					}
+					return TREE.getChildren(container);
+				}
+			}, executor).traverse(Arrays.asList(1), new ParallelChildTraversal.IConsumer<Integer>() {
+
+				@Override
+				public void accept(Integer element) {
+				}
+			});
+		} finally {
+			executor.shutdown();
+		}
+	}
+}